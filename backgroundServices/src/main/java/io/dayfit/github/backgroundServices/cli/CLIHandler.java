@@ -1,17 +1,24 @@
 package io.dayfit.github.backgroundServices.cli;
 
+import io.dayfit.github.backgroundServices.managers.ProtectedPathWatcher;
 import io.dayfit.github.backgroundServices.managers.ShutdownManager;
-import io.dayfit.github.backgroundServices.utils.Encryptor;
+import io.dayfit.github.backgroundServices.managers.ShutdownScheduler;
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.ContainerVerifier;
+import io.dayfit.github.shared.utils.CryptoSession;
+import io.dayfit.github.shared.utils.Encryptor;
+import io.dayfit.github.shared.utils.FileResult;
+import io.dayfit.github.shared.utils.PackArchive;
+import io.dayfit.github.shared.utils.PackCommand;
+import io.dayfit.github.backgroundServices.managers.PathLockManager;
 import io.dayfit.github.backgroundServices.managers.PathManager;
 import lombok.Setter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.BadPaddingException;
-import javax.crypto.NoSuchPaddingException;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.InvalidKeyException;
@@ -28,6 +35,8 @@ public class CLIHandler {
     @Setter
     private PathManager pathManager;
     private final ShutdownManager shutdownManager;
+    private final ProtectedPathWatcher protectedPathWatcher;
+    private final ShutdownScheduler shutdownScheduler;
 
     public final String FILE_NOT_FOUND_TEXT = "No such a file or directory have been found";
     public final String ERROR_TEXT = "Something went wrong!";
@@ -38,11 +47,17 @@ public class CLIHandler {
             \t-h - provide a help message.
             \t-e=[path] - encrypt a directory or file
             \t-d=[path] - decrypt a directory or file
+            \t-ea=[path] - encrypt a directory into a single pack file, [path].pack
+            \t-da=[path] - decrypt a pack file back into its directory
+            \t-la=[path] - list the entries of a pack file
+            \t-xa=[path]!(entry) - extract a single entry of a pack file, keeping the pack
             \t-a=[path] - add a path to the protected paths list
             \t-r=[path] - remove a path from the protected paths list
             \t-p - decrypt the protected paths list
-            \t-c - encrypt the protected paths list
-            \t-vp - view the protected paths list""";
+            \t-c - encrypt the protected paths list and shut down, within shutdown.time.budget ms if it is set
+            \t-vp - view the protected paths list
+            \t-v=[path] - verify that an encrypted directory or file is intact, without decrypting it
+            \t-v - verify that the protected paths list is intact, without decrypting it""";
 
     boolean isTested = false;
 
@@ -51,11 +66,25 @@ public class CLIHandler {
      *
      * @param pathManager the PathManager to use for managing protected paths
      * @param shutdownManager the ShutdownManager to use for shutting down the application
+     * @param protectedPathWatcher the watcher encrypting decrypted protected paths again once left alone
+     * @param shutdownScheduler the scheduler encrypting the protected paths within a time budget on -c
      */
     @Autowired
-    public CLIHandler(PathManager pathManager, ShutdownManager shutdownManager) {
+    public CLIHandler(PathManager pathManager, ShutdownManager shutdownManager, ProtectedPathWatcher protectedPathWatcher, ShutdownScheduler shutdownScheduler) {
         this.pathManager = pathManager;
         this.shutdownManager = shutdownManager;
+        this.protectedPathWatcher = protectedPathWatcher;
+        this.shutdownScheduler = shutdownScheduler;
+    }
+
+    /**
+     * Constructs a CLIHandler without a protected paths watcher and shutdown scheduler.
+     *
+     * @param pathManager the PathManager to use for managing protected paths
+     * @param shutdownManager the ShutdownManager to use for shutting down the application
+     */
+    public CLIHandler(PathManager pathManager, ShutdownManager shutdownManager) {
+        this(pathManager, shutdownManager, null, null);
     }
 
     /**
@@ -91,63 +120,93 @@ public class CLIHandler {
         }
 
         for (String rawArgument : arguments) {
-            String arg = rawArgument.length() >= 2 ?
-                    (rawArgument.contains("=") ? rawArgument.substring(0, rawArgument.indexOf("=") + 1) : rawArgument) :
-                    rawArgument;
-
             try {
-                switch (arg) {
-                    case "-h":
-                        System.out.println("[Success]: " + HELP_TEXT);
-                        break;
-
-                    case "-p":
-                        handleProtectedPaths(false, password);
-                        break;
-
-                    case "-c":
-                        handleProtectedPaths(true, password);
-                        if (!this.isTested) {
-                            try {
-                                System.out.println("[Success]: Shutting down application...");
-                                shutdownManager.shutdown();
-                            } catch (Exception e) {
-                                System.err.println("[Error]: Failed to shut down the application: " + e.getMessage());
-                            }
-                        }
-                        break;
-                    case "-d=":
-                        String decryptPath = rawArgument.substring(3);
-                        handleEncryptionDecryption(decryptPath, false, password);
-                        break;
-
-                    case "-e=":
-                        String encryptPath = rawArgument.substring(3);
-                        handleEncryptionDecryption(encryptPath, true, password);
-                        break;
-
-                    case "-a=":
-                        handleAddingAndRemovingProtectedPaths(true, rawArgument);
-                        break;
-
-                    case "-r=":
-                        handleAddingAndRemovingProtectedPaths(false, rawArgument);
-                        break;
-
-                    case "-vp":
-                        System.out.println("[Success]: " + pathManager.getProtectedPaths().toString());
-                        break;
-
-                    default:
-                        System.err.println("[Error]: " + NO_SUCH_ARGUMENT + " [argument=" + rawArgument + "]");
-                        break;
-                }
+                processArgument(rawArgument, password);
+            } catch (IllegalArgumentException e) {
+                System.err.println("[Error]: " + e.getMessage());
             } catch (Exception e) {
                 System.err.println("[Error]: " + ERROR_TEXT + "\n" + e.getMessage());
             }
         }
     }
 
+    /**
+     * Processes a single command-line argument.
+     *
+     * @param rawArgument the argument, including its value if it takes one
+     * @param password the password to use for encryption and decryption
+     * @throws IllegalArgumentException if the argument is not supported
+     * @throws Exception if the argument could not be processed
+     */
+    public void processArgument(String rawArgument, String password) throws Exception {
+        String arg = rawArgument.length() >= 2 ?
+                (rawArgument.contains("=") ? rawArgument.substring(0, rawArgument.indexOf("=") + 1) : rawArgument) :
+                rawArgument;
+
+        switch (arg) {
+            case "-h":
+                System.out.println("[Success]: " + HELP_TEXT);
+                break;
+
+            case "-p":
+                handleProtectedPaths(false, password);
+                break;
+
+            case "-c":
+                try {
+                    handleProtectedPaths(true, password);
+                } finally {
+                    // the application shuts down even if some files could not be encrypted, which fails the command
+                    if (!this.isTested) {
+                        try {
+                            System.out.println("[Success]: Shutting down application...");
+                            shutdownManager.shutdown();
+                        } catch (Exception e) {
+                            System.err.println("[Error]: Failed to shut down the application: " + e.getMessage());
+                        }
+                    }
+                }
+                break;
+            case "-d=":
+                String decryptPath = rawArgument.substring(3);
+                handleEncryptionDecryption(decryptPath, false, password);
+                break;
+
+            case "-e=":
+                String encryptPath = rawArgument.substring(3);
+                handleEncryptionDecryption(encryptPath, true, password);
+                break;
+
+            case "-ea=", "-da=", "-la=", "-xa=":
+                handlePack(arg, rawArgument.substring(4), password);
+                break;
+
+            case "-a=":
+                handleAddingAndRemovingProtectedPaths(true, rawArgument);
+                break;
+
+            case "-r=":
+                handleAddingAndRemovingProtectedPaths(false, rawArgument);
+                break;
+
+            case "-vp":
+                System.out.println("[Success]: " + pathManager.getProtectedPaths().toString());
+                break;
+
+            case "-v":
+                handleVerification(pathManager.getProtectedRoots(), "Protected paths list", password);
+                break;
+
+            case "-v=":
+                File verifyTarget = ContainerVerifier.parseTarget(rawArgument.substring(3));
+                handleVerification(List.of(verifyTarget), verifyTarget.getPath(), password);
+                break;
+
+            default:
+                throw new IllegalArgumentException(NO_SUCH_ARGUMENT + " [argument=" + rawArgument + "]");
+        }
+    }
+
     /**
      * Handles encryption or decryption of a file or directory.
      *
@@ -168,28 +227,68 @@ public class CLIHandler {
 
         String operation = isEncryption ? "encrypted" : "decrypted";
 
-        try {
+        try (PathLockManager.PathLock ignored = pathManager.getLockManager().lock(targetFile)) {
             if (!targetFile.isDirectory()) {
-                if (isEncryption) {
-                    Encryptor.encrypt(targetFile, password);
-                } else {
-                    Encryptor.decrypt(targetFile, password);
+                try (CryptoSession session = CryptoSession.open(password)) {
+                    if (Encryptor.isInTargetState(targetFile, isEncryption, session)) {
+                        System.out.println("[Success]: File " + path + " is already " + operation + ", skipped");
+                        return;
+                    }
+
+                    if (isEncryption) {
+                        Encryptor.encrypt(targetFile, targetFile, session);
+                    } else {
+                        Encryptor.decrypt(targetFile, targetFile, session);
+                    }
                 }
                 System.out.println("[Success]: File " + path + " successfully " + operation);
             } else {
-                if (isEncryption) {
-                    Encryptor.encryptDirectory(targetFile, password);
-                } else {
-                    Encryptor.decryptDirectory(targetFile, password);
-                }
-                System.out.println("[Success]: Directory " + path + " successfully " + operation);
+                BatchResult result = isEncryption ?
+                        Encryptor.encryptDirectory(targetFile, password, pathManager.getDirectoryEngine()) :
+                        Encryptor.decryptDirectory(targetFile, password, pathManager.getDirectoryEngine());
+                reportBatchResult("Directory " + path + " successfully " + operation, result);
             }
         } catch (InvalidKeyException e) {
             throw new InvalidKeyException("Invalid password or encryption key: " + e.getMessage());
         } catch (BadPaddingException e) {
-            System.err.println("[Error]: Invalid password or file is corrupted: " + e.getMessage());
+            throw new BadPaddingException("Invalid password or file is corrupted: " + e.getMessage());
         } catch (Exception e) {
-            throw new Exception("Failed to " + operation + " " + path + ": " + e.getMessage());
+            throw new Exception("Failed to " + (isEncryption ? "encrypt " : "decrypt ") + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles packing a directory into a single encrypted pack file, unpacking it, listing its entries or extracting
+     * a single entry.
+     *
+     * @param arg the argument, one of -ea=, -da=, -la= and -xa=
+     * @param value the path of the directory or pack file, followed by {@value PackArchive#ENTRY_SEPARATOR} and the
+     *              entry name for -xa=
+     * @param password the password to use for encryption and decryption
+     * @throws Exception if the pack could not be processed
+     */
+    private void handlePack(String arg, String value, String password) throws Exception {
+        PackCommand command = PackCommand.parse(arg, value);
+
+        try (PathLockManager.PathLock ignored = pathManager.getLockManager().lock(List.of(command.directory(), command.packFile()));
+             CryptoSession session = CryptoSession.open(password)) {
+            System.out.println("[Success]: " + command.execute(session));
+        }
+    }
+
+    /**
+     * Handles verifying that encrypted files are intact and can be decrypted with the password, reading them only.
+     * No locks are taken, so a verification running for hours does not hold up other operations.
+     *
+     * @param roots the files and directories to be verified
+     * @param description the name of what is verified, used in the report
+     * @param password the password the files have been encrypted with
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     * @throws IllegalStateException if any file failed verification
+     */
+    private void handleVerification(List<File> roots, String description, String password) throws NoSuchAlgorithmException {
+        try (CryptoSession session = CryptoSession.open(password)) {
+            System.out.println("[Success]: " + ContainerVerifier.verifyAll(pathManager.getDirectoryEngine(), roots, description, session));
         }
     }
 
@@ -211,12 +310,12 @@ public class CLIHandler {
         }
 
         if (addProtectedPaths) {
-            System.out.println("[Success]: Successfully added protected path: " + path);
             pathManager.addProtectedPath(path);
+            System.out.println("[Success]: Successfully added protected path: " + path);
         } else {
-            if (pathManager.getProtectedPaths().contains(path)) {
-                System.out.println("[Success]: Successfully removed protected path: " + path);
+            if (pathManager.containsProtectedPath(path)) {
                 pathManager.removeProtectedPath(path);
+                System.out.println("[Success]: Successfully removed protected path: " + path);
             } else {
                 System.out.println("[Warning]: Path is not a protected path: " + path);
             }
@@ -227,24 +326,64 @@ public class CLIHandler {
      * Handles encryption or decryption of the protected paths list.
      *
      * @param encryption true if encryption is to be performed, false for decryption
+     * @throws IllegalStateException if some files could not be processed, or were left for the next run by the time
+     *                               budget of the shutdown scheduler
+     * @throws Exception if the protected paths could not be processed
      */
-    private void handleProtectedPaths(boolean encryption, String password) {
-        try {
-            if (encryption) {
-                System.out.println("[Success]: Protected paths list successfully encrypted");
-                pathManager.encryptProtectedPaths(password);
-            } else {
-                System.out.println("[Success]: Protected paths list successfully decrypted");
-                pathManager.decryptProtectedPaths(password);
+    private void handleProtectedPaths(boolean encryption, String password) throws Exception {
+        if (encryption) {
+            if (protectedPathWatcher != null && protectedPathWatcher.coversProtectedPaths(password)) {
+                BatchResult flushed = protectedPathWatcher.flush();
+                protectedPathWatcher.disarm();
+                reportBatchResult("Protected paths list successfully encrypted, only pending changes had to be flushed", flushed);
+                return;
             }
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            System.err.println("[Error]: Encryption algorithm error: " + e.getMessage());
-        } catch (BadPaddingException e) {
-            System.err.println("[Error]: Invalid password or file is corrupted: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("[Error]: Error reading/writing protected paths: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("[Error]: Error processing protected paths: " + e.getMessage());
+
+            if (protectedPathWatcher != null) {
+                protectedPathWatcher.disarm();
+            }
+
+            if (shutdownScheduler != null) {
+                BatchResult result = new BatchResult();
+                long remaining = shutdownScheduler.encryptProtectedPaths(password, result);
+                reportBatchResult("Protected paths list successfully encrypted", result);
+
+                if (remaining > 0) {
+                    throw new IllegalStateException("Protected paths list partially encrypted, " + remaining + " file(s) left for the next run");
+                }
+                return;
+            }
+
+            reportBatchResult("Protected paths list successfully encrypted", pathManager.encryptProtectedPaths(password));
+        } else {
+            BatchResult result = pathManager.decryptProtectedPaths(password);
+
+            // the files that have been decrypted are watched even if others failed
+            if (protectedPathWatcher != null) {
+                protectedPathWatcher.arm(password, result);
+            }
+
+            reportBatchResult("Protected paths list successfully decrypted", result);
+        }
+    }
+
+    /**
+     * Prints the summary of a batch operation if all files have been processed.
+     *
+     * @param successMessage the message printed if all files have been processed
+     * @param result the result of the batch operation
+     * @throws IllegalStateException if some files could not be processed, listing every such file
+     */
+    private void reportBatchResult(String successMessage, BatchResult result) {
+        if (result.isSuccessful()) {
+            System.out.println("[Success]: " + successMessage + " (" + result + ")");
+            return;
+        }
+
+        StringBuilder message = new StringBuilder("Some files could not be processed (" + result + "):");
+        for (FileResult failure : result.getFailures()) {
+            message.append("\n\t").append(failure);
         }
+        throw new IllegalStateException(message.toString());
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,8 @@
 package io.dayfit.github.backgroundServices.components;
 
+import io.dayfit.github.shared.utils.ChunkStore;
+import io.dayfit.github.shared.utils.Compression;
+import io.dayfit.github.shared.utils.IOBackend;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
@@ -29,4 +32,150 @@ public class ConfigurationReader {
     public String getServerPingResponse() {
         return env.getProperty("server.ping.response");
     }
+
+    /**
+     * Retrieves the number of worker threads used for encrypting and decrypting files.
+     *
+     * @return the configured parallelism, 0 meaning one worker per available processor
+     */
+    public int getEncryptionParallelism() {
+        return env.getProperty("encryption.parallelism", Integer.class, 0);
+    }
+
+    /**
+     * Retrieves the I/O backend used for reading and writing files while they are encrypted or decrypted.
+     *
+     * @return the configured I/O backend
+     */
+    public IOBackend getIOBackend() {
+        return env.getProperty("encryption.io.backend", IOBackend.class, IOBackend.CHANNEL);
+    }
+
+    /**
+     * Retrieves the compression applied to files before they are encrypted.
+     *
+     * @return the configured compression
+     */
+    public Compression getCompression() {
+        return env.getProperty("encryption.compression", Compression.class, Compression.NONE);
+    }
+
+    /**
+     * Retrieves the maximum number of jobs running at the same time.
+     *
+     * @return the configured number of concurrently running jobs
+     */
+    public int getJobsMaxConcurrent() {
+        return env.getProperty("jobs.max.concurrent", Integer.class, 2);
+    }
+
+    /**
+     * Retrieves the maximum number of jobs waiting for a free worker before new jobs are rejected.
+     *
+     * @return the configured capacity of the job queue
+     */
+    public int getJobsMaxQueued() {
+        return env.getProperty("jobs.max.queued", Integer.class, 16);
+    }
+
+    /**
+     * Retrieves the maximum number of finished jobs kept for status queries.
+     *
+     * @return the configured number of retained finished jobs
+     */
+    public int getJobsMaxRetained() {
+        return env.getProperty("jobs.max.retained", Integer.class, 100);
+    }
+
+    /**
+     * Retrieves whether commands are also accepted over the Unix domain socket.
+     *
+     * @return true if the socket transport is enabled
+     */
+    public boolean isCliSocketEnabled() {
+        return env.getProperty("cli.socket.enabled", Boolean.class, true);
+    }
+
+    /**
+     * Retrieves the maximum number of connections served over the Unix domain socket at the same time.
+     *
+     * @return the configured number of connections, further ones are refused with a busy response
+     */
+    public int getCliSocketMaxConnections() {
+        return env.getProperty("cli.socket.max.connections", Integer.class, 16);
+    }
+
+    /**
+     * Retrieves the location of the Unix domain socket accepting commands.
+     *
+     * @return the configured location, blank meaning a file in the private per-user runtime directory
+     */
+    public String getCliSocketPath() {
+        return env.getProperty("cli.socket.path", "");
+    }
+
+    /**
+     * Retrieves the location of the file announcing that background services are ready.
+     *
+     * @return the configured location, blank meaning a file in the private per-user runtime directory
+     */
+    public String getReadyFilePath() {
+        return env.getProperty("ready.file.path", "");
+    }
+
+    /**
+     * Retrieves whether decrypted protected paths are watched and encrypted again once left alone.
+     *
+     * @return true if the protected paths watcher is enabled
+     */
+    public boolean isWatcherEnabled() {
+        return env.getProperty("watcher.enabled", Boolean.class, false);
+    }
+
+    /**
+     * Retrieves how long a watched file has to stay unchanged before it is encrypted again.
+     *
+     * @return the configured quiet period in milliseconds
+     */
+    public long getWatcherQuietPeriod() {
+        return env.getProperty("watcher.quiet.period", Long.class, 300_000L);
+    }
+
+    /**
+     * Retrieves how long encrypting the protected paths on -c may take before the remaining files are left for the next run.
+     *
+     * Files not started within the budget are left unencrypted, so there is no limit unless one is configured.
+     *
+     * @return the configured time budget in milliseconds, 0 meaning no limit
+     */
+    public long getShutdownTimeBudget() {
+        return env.getProperty("shutdown.time.budget", Long.class, 0L);
+    }
+
+    /**
+     * Retrieves the extensions of files encrypted before all others when the protected paths are encrypted on -c.
+     *
+     * @return the configured comma-separated extensions
+     */
+    public String getShutdownPriorityExtensions() {
+        return env.getProperty("shutdown.priority.extensions", "");
+    }
+
+    /**
+     * Retrieves whether the protected paths are encrypted into a deduplicating chunk store.
+     *
+     * @return true if identical content of the protected paths is encrypted and stored only once
+     */
+    public boolean isChunkStoreEnabled() {
+        return env.getProperty("protected.chunk.store.enabled", Boolean.class, false);
+    }
+
+    /**
+     * Retrieves the directory of the chunk store the protected paths are encrypted into.
+     *
+     * @return the configured directory
+     */
+    public String getChunkStorePath() {
+        return env.getProperty("protected.chunk.store.path", ChunkStore.DEFAULT_DIRECTORY);
+    }
 }
\ No newline at end of file
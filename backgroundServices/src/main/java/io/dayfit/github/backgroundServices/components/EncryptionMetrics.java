@@ -0,0 +1,185 @@
+package io.dayfit.github.backgroundServices.components;
+
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.OperationListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Component recording operational metrics of file encryption and decryption, rendered in the Prometheus text format.
+ * <p>
+ * All counters are {@link LongAdder}s, so recording on the per-file hot path does not contend between worker threads.
+ * Throughput (bytes/s, files/s) is derived from the counters by the monitoring system, e.g. with {@code rate()}.
+ * </p>
+ */
+@Component
+public class EncryptionMetrics implements OperationListener {
+    private static final String[] OPERATIONS = {"encrypt", "decrypt"};
+    private static final long[] SIZE_BUCKETS = {64L * 1024, 1024L * 1024, 64L * 1024 * 1024, 1024L * 1024 * 1024, Long.MAX_VALUE};
+    private static final String[] SIZE_LABELS = {"64KiB", "1MiB", "64MiB", "1GiB", "larger"};
+    private static final double[] LATENCY_BUCKETS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 60};
+
+    private final LongAdder[] bytes = adders(OPERATIONS.length);
+    private final LongAdder[] files = adders(OPERATIONS.length);
+    private final LongAdder[] batches = adders(OPERATIONS.length);
+    private final LongAdder[] batchNanos = adders(OPERATIONS.length);
+    private final Histogram[][] latencies = new Histogram[OPERATIONS.length][SIZE_BUCKETS.length];
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+
+    public EncryptionMetrics() {
+        for (Histogram[] operationLatencies : latencies) {
+            for (int bucket = 0; bucket < operationLatencies.length; bucket++) {
+                operationLatencies[bucket] = new Histogram();
+            }
+        }
+    }
+
+    @Override
+    public void fileStarted(boolean encryption) {
+        inFlight.increment();
+    }
+
+    @Override
+    public void fileCompleted(boolean encryption, long bytes, long nanos) {
+        int operation = operation(encryption);
+
+        inFlight.decrement();
+        this.bytes[operation].add(bytes);
+        files[operation].increment();
+        latencies[operation][sizeBucket(bytes)].record(nanos);
+    }
+
+    @Override
+    public void fileFailed(boolean encryption, Exception exception) {
+        inFlight.decrement();
+        errors.computeIfAbsent(exception.getClass().getSimpleName(), type -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void batchCompleted(boolean encryption, BatchResult result, long nanos) {
+        int operation = operation(encryption);
+
+        batches[operation].increment();
+        batchNanos[operation].add(nanos);
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format.
+     *
+     * @return the rendered metrics
+     */
+    public String render() {
+        StringBuilder builder = new StringBuilder();
+
+        header(builder, "alohomora_processed_bytes_total", "counter", "Bytes of input files that have been encrypted or decrypted.");
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            sample(builder, "alohomora_processed_bytes_total", "operation=\"" + OPERATIONS[operation] + "\"", bytes[operation].sum());
+        }
+
+        header(builder, "alohomora_processed_files_total", "counter", "Files that have been encrypted or decrypted.");
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            sample(builder, "alohomora_processed_files_total", "operation=\"" + OPERATIONS[operation] + "\"", files[operation].sum());
+        }
+
+        header(builder, "alohomora_file_duration_seconds", "histogram", "Time spent encrypting or decrypting a single file, by file size.");
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            for (int bucket = 0; bucket < SIZE_BUCKETS.length; bucket++) {
+                String labels = "operation=\"" + OPERATIONS[operation] + "\",size=\"" + SIZE_LABELS[bucket] + "\"";
+                latencies[operation][bucket].render(builder, "alohomora_file_duration_seconds", labels);
+            }
+        }
+
+        header(builder, "alohomora_errors_total", "counter", "Failed file operations, by exception type.");
+        errors.forEach((type, count) -> sample(builder, "alohomora_errors_total", "exception=\"" + type + "\"", count.sum()));
+
+        header(builder, "alohomora_operations_in_flight", "gauge", "File operations currently in progress.");
+        sample(builder, "alohomora_operations_in_flight", null, inFlight.sum());
+
+        header(builder, "alohomora_batches_total", "counter", "Batches of files processed by the directory engine.");
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            sample(builder, "alohomora_batches_total", "operation=\"" + OPERATIONS[operation] + "\"", batches[operation].sum());
+        }
+
+        header(builder, "alohomora_batch_duration_seconds_total", "counter", "Time spent processing batches of files.");
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            sample(builder, "alohomora_batch_duration_seconds_total", "operation=\"" + OPERATIONS[operation] + "\"", seconds(batchNanos[operation].sum()));
+        }
+
+        return builder.toString();
+    }
+
+    private static int operation(boolean encryption) {
+        return encryption ? 0 : 1;
+    }
+
+    private static int sizeBucket(long bytes) {
+        int bucket = 0;
+        while (bytes > SIZE_BUCKETS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int index = 0; index < count; index++) {
+            adders[index] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static void header(StringBuilder builder, String name, String type, String help) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder builder, String name, String labels, Object value) {
+        builder.append(name);
+        if (labels != null) {
+            builder.append('{').append(labels).append('}');
+        }
+        builder.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Latency histogram with fixed buckets, recording into striped counters.
+     */
+    private static class Histogram {
+        private final LongAdder[] counts = adders(LATENCY_BUCKETS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            double seconds = seconds(nanos);
+            int bucket = 0;
+
+            while (bucket < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+
+            counts[bucket].increment();
+            sumNanos.add(nanos);
+        }
+
+        void render(StringBuilder builder, String name, String labels) {
+            long cumulative = 0;
+
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                cumulative += counts[bucket].sum();
+                String bound = bucket < LATENCY_BUCKETS.length ? String.valueOf(LATENCY_BUCKETS[bucket]) : "+Inf";
+                sample(builder, name + "_bucket", labels + ",le=\"" + bound + "\"", cumulative);
+            }
+
+            sample(builder, name + "_sum", labels, seconds(sumNanos.sum()));
+            sample(builder, name + "_count", labels, cumulative);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.dayfit.github.backgroundServices.components;
+
+import io.dayfit.github.shared.ReadyFile;
+import io.dayfit.github.shared.utils.CryptoSession;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Component announcing to clients that background services are ready, by writing the {@link ReadyFile}.
+ * <p>
+ * The file is written after the application has started and every other startup listener has run, and after
+ * the crypto providers have been warmed up, so the first command does not pay for their initialization.
+ * </p>
+ */
+@Component
+public class ReadinessNotifier {
+    private static final int WARM_UP_SIZE = 64 * 1024;
+
+    private final ConfigurationReader configurationReader;
+    private volatile Path readyFile;
+
+    /**
+     * Constructor for ReadinessNotifier.
+     *
+     * @param configurationReader the reader providing the location of the ready file
+     */
+    @Autowired
+    public ReadinessNotifier(ConfigurationReader configurationReader) {
+        this.configurationReader = configurationReader;
+    }
+
+    /**
+     * Warms up the crypto providers and writes the ready file.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void announceReady() {
+        warmUpCrypto();
+
+        long startupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        Path path = ReadyFile.resolvePath(configurationReader.getReadyFilePath());
+
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put(ReadyFile.PID, ProcessHandle.current().pid());
+        content.put(ReadyFile.STARTUP_MILLIS, startupMillis);
+
+        try {
+            ReadyFile.write(path, content);
+            readyFile = path;
+            System.out.println("[Success]: Background services ready in " + startupMillis + " ms");
+        } catch (IOException e) {
+            System.err.println("[Warning]: Could not write the ready file " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the ready file, so clients do not mistake a stopped daemon for a running one.
+     */
+    @PreDestroy
+    public void withdraw() {
+        Path path = readyFile;
+        if (path == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("[Warning]: Could not remove the ready file " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Initializes the key derivation and both ciphers once, loading and JIT-compiling the provider code paths.
+     */
+    private void warmUpCrypto() {
+        try (CryptoSession session = CryptoSession.open("")) {
+            byte[] data = new byte[WARM_UP_SIZE];
+
+            Cipher containerCipher = session.containerCipher();
+            containerCipher.init(Cipher.ENCRYPT_MODE, session.getKey(), new GCMParameterSpec(128, new byte[12]));
+            containerCipher.doFinal(data);
+
+            Cipher legacyCipher = session.legacyCipher();
+            legacyCipher.init(Cipher.ENCRYPT_MODE, session.getKey());
+            legacyCipher.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            System.err.println("[Warning]: Could not warm up the crypto providers: " + e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package io.dayfit.github.backgroundServices.configurations;
 
+import io.dayfit.github.backgroundServices.components.ConfigurationReader;
+import io.dayfit.github.backgroundServices.components.EncryptionMetrics;
+import io.dayfit.github.shared.utils.DirectoryEngine;
+import io.dayfit.github.shared.utils.Encryptor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
@@ -8,4 +13,27 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class BackgroundApplicationConfiguration {
 
+    /**
+     * Applies the configured I/O backend and compression to the encryptor and registers the metrics recording its
+     * operations.
+     *
+     * @param configurationReader the reader providing the configured I/O backend and compression
+     * @param encryptionMetrics   the component recording the metrics
+     */
+    public BackgroundApplicationConfiguration(ConfigurationReader configurationReader, EncryptionMetrics encryptionMetrics) {
+        Encryptor.setIOBackend(configurationReader.getIOBackend());
+        Encryptor.setCompression(configurationReader.getCompression());
+        Encryptor.setOperationListener(encryptionMetrics);
+    }
+
+    /**
+     * Creates the engine used for encrypting and decrypting directories and protected paths.
+     *
+     * @param configurationReader the reader providing the configured parallelism
+     * @return the directory engine
+     */
+    @Bean(destroyMethod = "close")
+    public DirectoryEngine directoryEngine(ConfigurationReader configurationReader) {
+        return new DirectoryEngine(configurationReader.getEncryptionParallelism());
+    }
 }
\ No newline at end of file
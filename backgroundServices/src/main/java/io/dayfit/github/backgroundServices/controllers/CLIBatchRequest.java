@@ -0,0 +1,12 @@
+package io.dayfit.github.backgroundServices.controllers;
+
+import java.util.List;
+
+/**
+ * Body of a batch CLI request.
+ *
+ * @param commands the commands to execute, each one being a single argument
+ * @param password the password shared by all commands, may be null if none of them needs it
+ */
+public record CLIBatchRequest(List<String> commands, String password) {
+}
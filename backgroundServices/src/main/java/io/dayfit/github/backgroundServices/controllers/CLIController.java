@@ -8,10 +8,13 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Controller for handling CLI commands and ping requests.
@@ -55,6 +58,32 @@ public class CLIController {
         }
     }
 
+    /**
+     * Executes a batch of commands in a single request, so clients pay for one round trip and one password prompt
+     * regardless of how many commands they send.
+     *
+     * @param request the commands to execute and the password shared by all of them
+     * @return the overall status and the result of every command, in the order of the commands
+     */
+    @PostMapping("/cli/batch")
+    @ResponseBody
+    public Map<String, Object> cliBatch(@RequestBody CLIBatchRequest request) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (request.commands() == null || request.commands().isEmpty()) {
+            response.put("status", "error");
+            response.put("message", "No commands provided.");
+            return response;
+        }
+
+        List<Map<String, String>> results = cliCommandService.executeCommands(request.commands(), request.password());
+        boolean successful = results.stream().allMatch(result -> "success".equals(result.get("status")));
+
+        response.put("status", successful ? "success" : "error");
+        response.put("results", results);
+        return response;
+    }
+
     /**
      * Endpoint to check the server status.
      *
@@ -0,0 +1,228 @@
+package io.dayfit.github.backgroundServices.controllers;
+
+import io.dayfit.github.backgroundServices.components.ConfigurationReader;
+import io.dayfit.github.backgroundServices.services.CLICommandService;
+import io.dayfit.github.shared.RuntimeDirectory;
+import io.dayfit.github.shared.SocketProtocol;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Controller;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controller accepting CLI commands over a Unix domain socket, using the framed binary protocol described
+ * in {@link SocketProtocol}.
+ * <p>
+ * It offers the same commands as {@link CLIController} without going through HTTP and the TCP stack.
+ * Connections are persistent, every one of them being served by its own thread. The number of these threads is
+ * bounded; connections beyond it are answered with a busy response and closed, so the client falls back to HTTP.
+ * The socket file is only accessible by its owner, as requests carry the password. It is bound in a private
+ * {@link RuntimeDirectory}, and connections from processes of other users are refused where the platform reports the
+ * credentials of the peer.
+ * </p>
+ */
+@Controller
+public class CLISocketController {
+    private final CLICommandService cliCommandService;
+    private final ConfigurationReader configurationReader;
+    private final ExecutorService connections;
+    private volatile ServerSocketChannel server;
+    private volatile Path socketPath;
+
+    /**
+     * Constructor for CLISocketController.
+     *
+     * @param cliCommandService the service to execute CLI commands
+     * @param configurationReader the reader providing the location of the socket and the maximum number of connections
+     */
+    @Autowired
+    public CLISocketController(CLICommandService cliCommandService, ConfigurationReader configurationReader) {
+        this.cliCommandService = cliCommandService;
+        this.configurationReader = configurationReader;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.connections = new ThreadPoolExecutor(0, Math.max(1, configurationReader.getCliSocketMaxConnections()),
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "alohomora-socket-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Binds the socket once the application is ready, replacing a stale socket file left by a previous run.
+     * Only HTTP is offered if the directory of the socket is accessible by other users.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void start() {
+        if (!configurationReader.isCliSocketEnabled()) {
+            return;
+        }
+
+        Path path = SocketProtocol.resolveSocketPath(configurationReader.getCliSocketPath());
+
+        try {
+            RuntimeDirectory.create(path.toAbsolutePath().getParent());
+            Files.deleteIfExists(path);
+
+            ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.bind(UnixDomainSocketAddress.of(path));
+            restrictToOwner(path);
+
+            this.server = channel;
+            this.socketPath = path;
+
+            Thread acceptor = new Thread(this::acceptConnections, "alohomora-socket-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("[Warning]: Could not open the command socket " + path + ", only HTTP is available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the socket and removes its file.
+     */
+    @PreDestroy
+    public void stop() {
+        ServerSocketChannel channel = server;
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            System.err.println("[Warning]: Could not remove the command socket " + socketPath + ": " + e.getMessage());
+        }
+
+        connections.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel client = server.accept();
+
+                try {
+                    connections.execute(() -> serve(client));
+                } catch (RejectedExecutionException e) {
+                    refuse(client);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("[Error]: Could not accept a command socket connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Answers a connection no thread is left for with a busy response and closes it.
+     *
+     * @param client the refused connection
+     */
+    private void refuse(SocketChannel client) {
+        try (client) {
+            ByteBuffer response = SocketProtocol.newPayload(SocketProtocol.STATUS_BUSY);
+            SocketProtocol.writeFrame(client, SocketProtocol.putString(response, "No command socket connection is free, "
+                    + configurationReader.getCliSocketMaxConnections() + " are in use"));
+        } catch (IOException ignored) {
+            // the client went away, nothing left to answer
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (client) {
+            SocketProtocol.checkPeer(client);
+            ByteBuffer request;
+
+            while ((request = SocketProtocol.readFrame(client)) != null) {
+                SocketProtocol.writeFrame(client, handle(request));
+            }
+        } catch (ProtocolException e) {
+            System.err.println("[Error]: Malformed command socket request: " + e.getMessage());
+        } catch (SecurityException e) {
+            System.err.println("[Warning]: Refused a command socket connection: " + e.getMessage());
+        } catch (IOException ignored) {
+            // the client went away, nothing left to answer
+        }
+    }
+
+    private ByteBuffer handle(ByteBuffer request) throws ProtocolException {
+        byte type = SocketProtocol.getByte(request);
+
+        switch (type) {
+            case SocketProtocol.TYPE_PING -> {
+                ByteBuffer response = SocketProtocol.newPayload(SocketProtocol.STATUS_SUCCESS);
+                return SocketProtocol.putString(response, configurationReader.getServerPingResponse());
+            }
+            case SocketProtocol.TYPE_BATCH -> {
+                String password = SocketProtocol.getString(request);
+                int count = SocketProtocol.getInt(request);
+
+                if (count < 0 || count > request.remaining() / Integer.BYTES) {
+                    throw new ProtocolException("Invalid command count " + count);
+                }
+
+                List<String> commands = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    commands.add(SocketProtocol.getString(request));
+                }
+
+                return encodeResults(cliCommandService.executeCommands(commands, password));
+            }
+            default -> throw new ProtocolException("Unknown request type " + type);
+        }
+    }
+
+    private ByteBuffer encodeResults(List<Map<String, String>> results) {
+        boolean successful = results.stream().allMatch(result -> "success".equals(result.get("status")));
+        ByteBuffer response = SocketProtocol.newPayload(successful ? SocketProtocol.STATUS_SUCCESS : SocketProtocol.STATUS_ERROR);
+
+        response = SocketProtocol.putInt(response, results.size());
+        for (Map<String, String> result : results) {
+            byte status = "success".equals(result.get("status")) ? SocketProtocol.STATUS_SUCCESS : SocketProtocol.STATUS_ERROR;
+
+            response = SocketProtocol.putByte(response, status);
+            response = SocketProtocol.putString(response, result.get("command"));
+            response = SocketProtocol.putString(response, result.get("message"));
+        }
+
+        return response;
+    }
+
+    private void restrictToOwner(Path path) {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("[Warning]: Could not restrict access to the command socket " + path + ": " + e.getMessage());
+        }
+    }
+}
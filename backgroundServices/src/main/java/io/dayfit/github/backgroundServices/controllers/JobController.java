@@ -0,0 +1,95 @@
+package io.dayfit.github.backgroundServices.controllers;
+
+import io.dayfit.github.backgroundServices.jobs.Job;
+import io.dayfit.github.backgroundServices.services.JobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Controller for running encryption and decryption commands asynchronously.
+ */
+@Controller
+public class JobController {
+    private final JobService jobService;
+
+    /**
+     * Constructor for JobController.
+     *
+     * @param jobService the service running the jobs
+     */
+    @Autowired
+    public JobController(JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    /**
+     * Submits a command, returning the identifier of its job immediately.
+     *
+     * @param command the command to execute, one of -e=[path], -d=[path], -v=[path], -p, -c or -v
+     * @param password the password used for encryption or decryption
+     * @return the identifier of the job, or the reason it could not be submitted
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> submit(@RequestParam String command, @RequestParam(required = false) String password) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            Job job = jobService.submit(command, password);
+
+            response.put("status", "success");
+            response.put("id", job.getId());
+            return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        } catch (RejectedExecutionException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Retrieves the progress of a job.
+     *
+     * @param id the identifier of the job
+     * @return the progress of the job, or 404 if no such job exists
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String id) {
+        return jobService.getJob(id)
+                .map(job -> new ResponseEntity<>(job.snapshot(), HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Streams the result of every file processed by a job as Server-Sent Events, followed by a final "done" event.
+     * Events a slow client cannot keep up with are dropped, leaving a gap in the event ids.
+     *
+     * @param id the identifier of the job
+     * @return the event stream, or 404 if no such job exists
+     */
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String id) {
+        return jobService.getJob(id)
+                .map(job -> {
+                    SseEmitter emitter = new SseEmitter(0L);
+                    job.subscribe(emitter);
+                    return new ResponseEntity<>(emitter, HttpStatus.OK);
+                })
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+}
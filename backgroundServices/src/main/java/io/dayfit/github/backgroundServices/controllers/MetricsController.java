@@ -0,0 +1,36 @@
+package io.dayfit.github.backgroundServices.controllers;
+
+import io.dayfit.github.backgroundServices.components.EncryptionMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Controller exposing operational metrics in the Prometheus text format.
+ */
+@Controller
+public class MetricsController {
+    private final EncryptionMetrics encryptionMetrics;
+
+    /**
+     * Constructor for MetricsController.
+     *
+     * @param encryptionMetrics the component recording the metrics
+     */
+    @Autowired
+    public MetricsController(EncryptionMetrics encryptionMetrics) {
+        this.encryptionMetrics = encryptionMetrics;
+    }
+
+    /**
+     * Endpoint scraped by Prometheus.
+     *
+     * @return the metrics in the Prometheus text exposition format
+     */
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    @ResponseBody
+    public String metrics() {
+        return encryptionMetrics.render();
+    }
+}
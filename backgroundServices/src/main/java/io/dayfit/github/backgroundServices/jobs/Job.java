@@ -0,0 +1,352 @@
+package io.dayfit.github.backgroundServices.jobs;
+
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.FileResult;
+import lombok.Getter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A command running asynchronously in the background, tracking its progress and streaming per-file results
+ * to its subscribers.
+ * <p>
+ * Results are recorded on the worker threads, while all events are sent to subscribers by a single dispatcher,
+ * so a slow client never stalls the encryption. Results waiting for the dispatcher are coalesced into a bounded queue
+ * drained by a single task at a time; if the dispatcher falls behind, the oldest of them are dropped and subscribers
+ * see a gap in the event ids, to be filled from the job status or by subscribing again. Only the most recent results
+ * and the failures are kept for replaying them to new subscribers, and the recent ones are released once the job has
+ * finished, so a job over a large tree does not hold a result per file.
+ * </p>
+ */
+public class Job {
+    static final int REPLAYED_RESULTS = 1000;
+    static final int REPLAYED_FAILURES = 1000;
+    static final int PENDING_EVENTS = 1000;
+
+    @Getter
+    private final String id;
+    @Getter
+    private final String command;
+    private final Executor dispatcher;
+    private final Instant createdAt = Instant.now();
+    private final Object replayLock = new Object();
+    private final ArrayDeque<Recorded> recent = new ArrayDeque<>();
+    private final List<Recorded> failures = new ArrayList<>();
+    private final ArrayDeque<Recorded> pending = new ArrayDeque<>();
+    private boolean drainScheduled;
+    private int recorded;
+    private int subscriberCount;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final LongAdder filesDone = new LongAdder();
+    private final LongAdder filesSkipped = new LongAdder();
+    private final LongAdder filesFailed = new LongAdder();
+    private final LongAdder bytesDone = new LongAdder();
+
+    @Getter
+    private volatile JobState state = JobState.QUEUED;
+    private volatile Instant startedAt;
+    @Getter
+    private volatile Instant finishedAt;
+    private volatile long filesTotal = -1;
+    private volatile long bytesTotal = -1;
+    private volatile String message;
+
+    /**
+     * Creates a queued job.
+     *
+     * @param id         the unique identifier of the job
+     * @param command    the command executed by the job
+     * @param dispatcher the single-threaded executor sending events to subscribers
+     */
+    public Job(String id, String command, Executor dispatcher) {
+        this.id = id;
+        this.command = command;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Marks the job as running.
+     *
+     * @param filesTotal the number of files the job is going to process
+     * @param bytesTotal the number of bytes the job is going to process
+     */
+    public void start(long filesTotal, long bytesTotal) {
+        this.filesTotal = filesTotal;
+        this.bytesTotal = bytesTotal;
+        this.startedAt = Instant.now();
+        this.state = JobState.RUNNING;
+    }
+
+    /**
+     * Records the result of a single file and publishes it to all subscribers, if there are any.
+     *
+     * @param result the result of the file
+     */
+    public void record(FileResult result) {
+        switch (result.status()) {
+            case PROCESSED -> filesDone.increment();
+            case SKIPPED -> filesSkipped.increment();
+            case FAILED -> filesFailed.increment();
+        }
+        bytesDone.add(result.bytes());
+
+        synchronized (replayLock) {
+            Recorded entry = new Recorded(recorded++, result);
+
+            if (recent.size() == REPLAYED_RESULTS) {
+                recent.removeFirst();
+            }
+            recent.addLast(entry);
+
+            if (!result.successful() && failures.size() < REPLAYED_FAILURES) {
+                failures.add(entry);
+            }
+
+            if (subscriberCount > 0) {
+                if (pending.size() == PENDING_EVENTS) {
+                    pending.removeFirst();
+                }
+                pending.addLast(entry);
+
+                if (!drainScheduled) {
+                    drainScheduled = true;
+                    dispatcher.execute(this::publishPending);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the job as finished with the result of its batch.
+     *
+     * @param result the result of the batch
+     */
+    public void complete(BatchResult result) {
+        finish(result.isSuccessful() ? JobState.SUCCEEDED : JobState.COMPLETED_WITH_ERRORS, result.toString());
+    }
+
+    /**
+     * Marks the job as finished with the result of its batch, described by the given message.
+     *
+     * @param result  the result of the batch
+     * @param message the message describing the outcome of the job
+     */
+    public void complete(BatchResult result, String message) {
+        finish(result.isSuccessful() ? JobState.SUCCEEDED : JobState.COMPLETED_WITH_ERRORS, message);
+    }
+
+    /**
+     * Marks the job as finished with errors its per-file results do not tell, e.g. files left for the next run.
+     *
+     * @param message the message describing the outcome of the job
+     */
+    public void completeWithErrors(String message) {
+        finish(JobState.COMPLETED_WITH_ERRORS, message);
+    }
+
+    /**
+     * Marks the job as finished without a batch result, e.g. if the command has no per-file results.
+     *
+     * @param message the message describing the outcome of the job
+     */
+    public void complete(String message) {
+        finish(JobState.SUCCEEDED, message);
+    }
+
+    /**
+     * Marks the job as failed.
+     *
+     * @param message the reason of the failure
+     */
+    public void fail(String message) {
+        finish(JobState.FAILED, message);
+    }
+
+    /**
+     * @return true if the job has finished, successfully or not
+     */
+    public boolean isFinished() {
+        return state != JobState.QUEUED && state != JobState.RUNNING;
+    }
+
+    /**
+     * Registers a subscriber. The failures and the most recent results are replayed to it before it receives live
+     * events, only the failures if the job has finished, and finished jobs complete the subscription right away.
+     *
+     * @param emitter the emitter of the subscriber
+     */
+    public void subscribe(SseEmitter emitter) {
+        dispatcher.execute(() -> {
+            Subscriber subscriber = new Subscriber(emitter);
+            List<Recorded> replayed = new ArrayList<>();
+
+            synchronized (replayLock) {
+                int oldestRecent = recent.isEmpty() ? recorded : recent.getFirst().index();
+                failures.stream().filter(entry -> entry.index() < oldestRecent).forEach(replayed::add);
+                replayed.addAll(recent);
+                // results recorded from now on are published to the subscriber after this replay
+                subscriberCount++;
+            }
+
+            replayed.sort(Comparator.comparingInt(Recorded::index));
+            for (Recorded entry : replayed) {
+                subscriber.sent = entry.index() + 1;
+                subscriber.send(entry.index(), entry.result());
+            }
+
+            if (isFinished()) {
+                subscriber.finish(snapshot());
+                unsubscribed(1);
+            } else if (subscriber.open) {
+                subscribers.add(subscriber);
+            } else {
+                unsubscribed(1);
+            }
+        });
+    }
+
+    /**
+     * @return the current progress of the job, including the estimated time until it finishes
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long done = bytesDone.sum();
+
+        snapshot.put("id", id);
+        snapshot.put("command", command);
+        snapshot.put("state", state);
+        snapshot.put("createdAt", createdAt.toString());
+        snapshot.put("filesTotal", filesTotal);
+        snapshot.put("filesDone", filesDone.sum());
+        snapshot.put("filesSkipped", filesSkipped.sum());
+        snapshot.put("filesFailed", filesFailed.sum());
+        snapshot.put("bytesTotal", bytesTotal);
+        snapshot.put("bytesDone", done);
+        snapshot.put("etaSeconds", estimateRemainingSeconds(done));
+        snapshot.put("message", message);
+
+        return snapshot;
+    }
+
+    private Long estimateRemainingSeconds(long done) {
+        if (state != JobState.RUNNING || startedAt == null || done == 0 || bytesTotal < done) {
+            return isFinished() ? 0L : null;
+        }
+
+        long elapsedMillis = Duration.between(startedAt, Instant.now()).toMillis();
+        return elapsedMillis * (bytesTotal - done) / done / 1000;
+    }
+
+    private void finish(JobState state, String message) {
+        this.message = message;
+        this.finishedAt = Instant.now();
+        this.state = state;
+
+        synchronized (replayLock) {
+            recent.clear();
+        }
+
+        dispatcher.execute(() -> {
+            Map<String, Object> snapshot = snapshot();
+            subscribers.forEach(subscriber -> subscriber.finish(snapshot));
+            unsubscribed(subscribers.size());
+            subscribers.clear();
+        });
+    }
+
+    private void publishPending() {
+        List<Recorded> batch;
+
+        synchronized (replayLock) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            drainScheduled = false;
+        }
+
+        for (Recorded entry : batch) {
+            publish(entry.index(), entry.result());
+        }
+    }
+
+    private void publish(int index, FileResult result) {
+        int before = subscribers.size();
+
+        subscribers.removeIf(subscriber -> {
+            if (index >= subscriber.sent) {
+                subscriber.sent = index + 1;
+                subscriber.send(index, result);
+            }
+            return !subscriber.open;
+        });
+
+        unsubscribed(before - subscribers.size());
+    }
+
+    private void unsubscribed(int count) {
+        if (count > 0) {
+            synchronized (replayLock) {
+                subscriberCount -= count;
+            }
+        }
+    }
+
+    /**
+     * Result kept for replaying it, along with its position among all results of the job.
+     */
+    private record Recorded(int index, FileResult result) {
+    }
+
+    /**
+     * Connected client, only accessed by the dispatcher thread.
+     */
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private int sent;
+        private boolean open = true;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void send(int index, FileResult result) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("path", result.file().getAbsolutePath());
+            event.put("status", result.status());
+            event.put("bytes", result.bytes());
+            event.put("message", result.message());
+
+            send(SseEmitter.event().id(String.valueOf(index)).name("file").data(event));
+        }
+
+        void finish(Map<String, Object> snapshot) {
+            send(SseEmitter.event().name("done").data(snapshot));
+            if (open) {
+                emitter.complete();
+                open = false;
+            }
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) {
+            if (!open) {
+                return;
+            }
+
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                open = false;
+            }
+        }
+    }
+}
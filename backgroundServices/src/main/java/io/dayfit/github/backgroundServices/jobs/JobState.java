@@ -0,0 +1,12 @@
+package io.dayfit.github.backgroundServices.jobs;
+
+/**
+ * Lifecycle states of a {@link Job}.
+ */
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    COMPLETED_WITH_ERRORS,
+    FAILED
+}
@@ -0,0 +1,135 @@
+package io.dayfit.github.backgroundServices.managers;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Serializes operations on the same file or directory tree, while operations on unrelated paths run in parallel.
+ * <p>
+ * Locking a path takes the write lock of the path itself and the read lock of every directory above it, so an
+ * operation conflicts with operations on the same path, on any directory containing it and on anything inside it,
+ * but not with operations on its siblings. Paths are resolved to their real paths first, so aliases conflict too.
+ * </p>
+ * <p>
+ * The locks are striped: every path maps to one of a fixed number of read-write locks, so memory does not grow with
+ * the number of paths, at the price of unrelated paths occasionally sharing a stripe and waiting for each other.
+ * All stripes an operation needs are acquired at once, in ascending order and in the strongest mode needed, so
+ * operations never deadlock on each other.
+ * </p>
+ */
+public class PathLockManager {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    /**
+     * Creates a lock manager with the default number of stripes.
+     */
+    public PathLockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a lock manager.
+     *
+     * @param stripes the number of read-write locks the paths are spread over, rounded up to a power of two
+     */
+    public PathLockManager(int stripes) {
+        int count = Integer.highestOneBit(Math.max(stripes, 1) - 1) << 1;
+        this.stripes = new ReentrantReadWriteLock[Math.max(count, 1)];
+
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Locks the given files and directories for an operation, waiting for conflicting operations to finish.
+     *
+     * @param files the files and directories the operation works on
+     * @return the held lock, to be closed once the operation has finished
+     */
+    public PathLock lock(Collection<File> files) {
+        Map<Integer, Boolean> modes = new TreeMap<>();
+
+        for (File file : files) {
+            List<String> components = ProtectedPathIndex.components(ProtectedPathIndex.canonicalize(file.getPath()));
+            StringBuilder prefix = new StringBuilder();
+
+            for (int depth = 0; depth < components.size(); depth++) {
+                if (depth > 1) {
+                    prefix.append('/');
+                }
+                prefix.append(components.get(depth));
+
+                boolean exclusive = depth == components.size() - 1;
+                modes.merge(stripeOf(prefix), exclusive, Boolean::logicalOr);
+            }
+        }
+
+        List<Lock> held = new ArrayList<>(modes.size());
+        modes.forEach((stripe, exclusive) -> {
+            Lock lock = exclusive ? stripes[stripe].writeLock() : stripes[stripe].readLock();
+            lock.lock();
+            held.add(lock);
+        });
+
+        return new PathLock(held);
+    }
+
+    /**
+     * Locks a single file or directory for an operation.
+     *
+     * @param file the file or directory the operation works on
+     * @return the held lock, to be closed once the operation has finished
+     */
+    public PathLock lock(File file) {
+        return lock(List.of(file));
+    }
+
+    /**
+     * Locks a single path for an operation.
+     *
+     * @param path the path the operation works on
+     * @return the held lock, to be closed once the operation has finished
+     */
+    public PathLock lock(Path path) {
+        return lock(path.toFile());
+    }
+
+    private int stripeOf(CharSequence path) {
+        int hash = path.toString().hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Locks held for an operation, released in the reverse order they have been acquired in.
+     */
+    public static class PathLock implements AutoCloseable {
+        private final List<Lock> held;
+        private boolean released;
+
+        private PathLock(List<Lock> held) {
+            this.held = held;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+    }
+}
@@ -1,39 +1,104 @@
 package io.dayfit.github.backgroundServices.managers;
-import io.dayfit.github.backgroundServices.utils.Encryptor;
-import io.dayfit.github.shared.JSON;
+import io.dayfit.github.backgroundServices.components.ConfigurationReader;
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.ChunkStore;
+import io.dayfit.github.shared.utils.CryptoSession;
+import io.dayfit.github.shared.utils.DirectoryEngine;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+/**
+ * Holds the protected paths and runs the operations on them.
+ * <p>
+ * The protected paths are published as an immutable snapshot, so they are read without locking while other requests
+ * change them. Changes are serialized and persisted in the order they are published. Encrypting or decrypting files
+ * locks them through the {@link PathLockManager}, so concurrent operations on the same file or directory tree are run
+ * one after another. If the chunk store is enabled, files of the protected paths are encrypted into the shared
+ * {@link ChunkStore}, so identical content is encrypted and written only once. The progress of every operation is
+ * kept in the {@link ProgressJournal}, so an operation interrupted by a crash is resumed by the next one on the same
+ * files instead of being run over the whole tree again.
+ * </p>
+ */
 @Component
 public class PathManager {
+    private volatile ProtectedPathIndex protectedPaths = ProtectedPathIndex.empty();
+    private final Object mutationLock = new Object();
     @Getter
-    private Set<String> protectedPaths = new HashSet<>();
+    private final DirectoryEngine directoryEngine;
+    @Getter
+    private final PathLockManager lockManager = new PathLockManager();
+    @Getter
+    private final ChunkStore chunkStore;
+    private ProtectedPathsStore store;
+    private final ProgressJournal progressJournal;
     private final String PATH_MANAGER_FILE = "protectedPaths.json";
+    private final String PATH_MANAGER_JOURNAL_FILE = "protectedPaths.journal";
+    private static final String PROGRESS_JOURNAL_DIRECTORY = "operationJournals";
 
     /**
      * Constructor for the PathManager class.
      * Initializes a new instance of the PathManager class.
      */
     public PathManager(){
+        this(DirectoryEngine.common());
+    }
+
+    /**
+     * Constructor for the PathManager class.
+     *
+     * @param directoryEngine the engine used for encrypting and decrypting the protected paths
+     */
+    public PathManager(DirectoryEngine directoryEngine)
+    {
+        this.directoryEngine = directoryEngine;
+        this.chunkStore = null;
+        this.progressJournal = new ProgressJournal(Path.of(PROGRESS_JOURNAL_DIRECTORY));
+        loadProtectedPaths();
+    }
+
+    /**
+     * Constructor for the PathManager class.
+     *
+     * @param directoryEngine the engine used for encrypting and decrypting the protected paths
+     * @param configurationReader the reader providing whether the protected paths are encrypted into a chunk store
+     */
+    @Autowired
+    public PathManager(DirectoryEngine directoryEngine, ConfigurationReader configurationReader)
+    {
+        this.directoryEngine = directoryEngine;
+        this.chunkStore = configurationReader.isChunkStoreEnabled() ? new ChunkStore(Path.of(configurationReader.getChunkStorePath())) : null;
+        this.progressJournal = new ProgressJournal(Path.of(PROGRESS_JOURNAL_DIRECTORY));
         loadProtectedPaths();
     }
 
+    /**
+     * Constructor for the PathManager class.
+     *
+     * @param loadProtectedPaths true to load and persist the protected paths and the progress of operations, false to
+     *                           keep them in memory only
+     */
     public PathManager(boolean loadProtectedPaths)
     {
+        this.directoryEngine = DirectoryEngine.common();
+        this.chunkStore = null;
+        this.progressJournal = loadProtectedPaths ? new ProgressJournal(Path.of(PROGRESS_JOURNAL_DIRECTORY)) : null;
+
         if (loadProtectedPaths)
         {
             loadProtectedPaths();
@@ -41,128 +106,323 @@ public class PathManager {
     }
 
     /**
-     * Adds a protected path to the set.
+     * @return the protected paths as they have been added
+     */
+    public Set<String> getProtectedPaths() {
+        return protectedPaths.getPaths();
+    }
+
+    /**
+     * Adds a protected path to the index. Paths already protected under another name, e.g. through a symlink,
+     * are not added again.
+     *
+     * The change is persisted before it is published to the index, so a path is never protected in memory only.
      *
      * @param protectedPath a string representing the path to be added
+     * @throws IOException if the change cannot be persisted, leaving the index unchanged
      */
     public void addProtectedPath(String protectedPath) throws IOException {
-        this.protectedPaths.add(protectedPath);
-        saveProtectedPaths();
+        synchronized (mutationLock) {
+            ProtectedPathIndex changed = protectedPaths.with(protectedPath);
+
+            if (changed == protectedPaths) {
+                return;
+            }
+
+            if (store != null) {
+                await(store.add(protectedPath));
+            }
+            protectedPaths = changed;
+        }
     }
 
     /**
-     * Removes a protected path from the set.
+     * Removes a protected path from the index. The change is persisted before it is published to the index.
      *
-     * @param protectedPath a string representing the path to be removed
+     * @param protectedPath a string representing the path to be removed, or any alias of it
+     * @throws IOException if the change cannot be persisted, leaving the index unchanged
      */
-    public void removeProtectedPath(String protectedPath) {
-        this.protectedPaths.remove(protectedPath);
+    public void removeProtectedPath(String protectedPath) throws IOException {
+        synchronized (mutationLock) {
+            String entry = protectedPaths.getEntry(protectedPath);
+
+            if (entry == null) {
+                return;
+            }
+
+            if (store != null) {
+                await(store.remove(entry));
+            }
+            protectedPaths = protectedPaths.without(entry);
+        }
+    }
+
+    /**
+     * Checks whether a path has been added to the protected paths, under this or any other name.
+     *
+     * @param protectedPath the path to check
+     * @return true if the path is a protected path
+     */
+    public boolean containsProtectedPath(String protectedPath) {
+        return protectedPaths.contains(protectedPath);
+    }
+
+    /**
+     * Checks whether a file is protected, i.e. it is a protected path or lies inside one.
+     * Runs in O(depth of the path), regardless of the number of protected paths.
+     *
+     * @param path the path to check
+     * @return true if the path is protected
+     */
+    public boolean isProtected(Path path) {
+        return protectedPaths.isProtected(path);
     }
 
     /**
-     * Saves the protected paths to a file.
+     * Saves the protected paths to a file, compacting the journal of changes into a new snapshot.
+     * Changes are persisted as they are made, so this is never needed for durability.
      *
      * @throws IOException if an I/O error occurs
      */
     public void saveProtectedPaths() throws IOException {
-        Path savePath = Path.of(PATH_MANAGER_FILE);
-        if (!savePath.toFile().exists())
-        {
-            Files.createFile(savePath);
+        if (store != null) {
+            await(store.compact());
+        }
+    }
+
+    /**
+     * Writes the pending changes of the protected paths and the progress of operations, and stops persisting them.
+     */
+    @PreDestroy
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+
+        if (progressJournal != null) {
+            progressJournal.close();
+        }
+    }
+
+    /**
+     * Reports the operations interrupted by a previous run, if any. They are resumed by running them again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportInterruptedOperations() {
+        if (progressJournal == null) {
+            return;
+        }
+
+        try {
+            for (ProgressJournal.Interrupted operation : progressJournal.interrupted()) {
+                System.err.println("[Warning]: " + (operation.encryption() ? "Encryption" : "Decryption") + " of " +
+                        String.join(", ", operation.roots()) + " started at " + Instant.ofEpochMilli(operation.startedAt()) +
+                        " was interrupted after " + operation.completed().size() + " file(s), run it again to resume it");
+            }
+        } catch (IOException e) {
+            System.err.println("[Warning]: Could not read the progress journals: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Begins journaling the progress of an operation, taking over the interrupted operations on the same files.
+     * If the journal cannot be written, the operation runs without being journaled.
+     *
+     * @param encryption true if the operation encrypts, false if it decrypts
+     * @param roots the files and directories the operation works on
+     * @return the operation, to be finished once all files have been processed
+     */
+    public ProgressJournal.Operation beginOperation(boolean encryption, List<File> roots) {
+        if (progressJournal == null) {
+            return ProgressJournal.Operation.untracked();
         }
 
-        Runnable saving = new SavingManager(savePath, JSON.toJSON(this.protectedPaths));
-        Thread thread = new Thread(saving);
-        thread.start();
+        try {
+            return progressJournal.begin(encryption, roots);
+        } catch (IOException e) {
+            System.err.println("[Warning]: Could not write the progress journal, the operation cannot be resumed: " + e.getMessage());
+            return ProgressJournal.Operation.untracked();
+        }
     }
 
     /**
      * Encrypts the protected paths using the specified password.
      *
      * @param password the password used for encryption
+     * @return the result of every processed file
      *
-     * @throws BadPaddingException if given password is wrong or file is corrupted
-     * @throws IOException if an I/O error occurs
-     * @throws NoSuchPaddingException if the specified padding mechanism is not available
-     * @throws IllegalBlockSizeException if the provided block size is invalid
-     * @throws NoSuchAlgorithmException if the specified algorithm is not available
-     * @throws InvalidKeyException if the given key is invalid
+     * @throws FileNotFoundException if any of the protected paths does not exist
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
      */
-    public void encryptProtectedPaths(String password) throws IOException, NoSuchPaddingException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException {
-        handleProtectedPaths(true, password);
+    public BatchResult encryptProtectedPaths(String password) throws FileNotFoundException, NoSuchAlgorithmException {
+        return handleProtectedPaths(true, password, new BatchResult());
+    }
+
+    /**
+     * Encrypts the protected paths using the specified password, recording the outcome of every file into the given result.
+     *
+     * @param password the password used for encryption
+     * @param result the result the outcome of every file is recorded into
+     * @return the given result
+     *
+     * @throws FileNotFoundException if any of the protected paths does not exist
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    public BatchResult encryptProtectedPaths(String password, BatchResult result) throws FileNotFoundException, NoSuchAlgorithmException {
+        return handleProtectedPaths(true, password, result);
     }
 
     /**
      * Decrypts the protected paths using the specified password.
      *
      * @param password the password used for decryption
+     * @return the result of every processed file
      *
-     * @throws BadPaddingException if given password is wrong or file is corrupted
-     * @throws IOException if an I/O error occurs
-     * @throws IllegalBlockSizeException if the provided block size is invalid
-     * @throws NoSuchPaddingException if the specified padding mechanism is not available
-     * @throws NoSuchAlgorithmException if the specified algorithm is not available
-     * @throws InvalidKeyException if the given key is invalid
+     * @throws FileNotFoundException if any of the protected paths does not exist
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
      */
-    public void decryptProtectedPaths(String password) throws IOException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException {
-        handleProtectedPaths(false, password);
+    public BatchResult decryptProtectedPaths(String password) throws FileNotFoundException, NoSuchAlgorithmException {
+        return handleProtectedPaths(false, password, new BatchResult());
     }
 
     /**
-     * Handles the encryption or decryption of protected paths.
+     * Decrypts the protected paths using the specified password, recording the outcome of every file into the given result.
      *
-     * @param encryption a boolean indicating whether to encrypt (true) or decrypt (false) the protected paths
-     * @param password the password used for encryption or decryption
+     * @param password the password used for decryption
+     * @param result the result the outcome of every file is recorded into
+     * @return the given result
      *
-     * @throws BadPaddingException if given password is wrong or file is corrupted
-     * @throws NoSuchAlgorithmException if the specified algorithm is not available
-     * @throws IOException if an I/O error occurs
-     * @throws InvalidKeyException if the given key is invalid
-     * @throws NoSuchPaddingException if the specified padding mechanism is not available
-     * @throws IllegalBlockSizeException if the provided block size is invalid
+     * @throws FileNotFoundException if any of the protected paths does not exist
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    public BatchResult decryptProtectedPaths(String password, BatchResult result) throws FileNotFoundException, NoSuchAlgorithmException {
+        return handleProtectedPaths(false, password, result);
+    }
+
+    /**
+     * Resolves the protected paths into files. Protected paths lying inside another protected directory are left out,
+     * as they are processed together with it.
+     *
+     * @return the topmost protected files and directories, as real paths
+     * @throws FileNotFoundException if any of the protected paths does not exist
      */
-    private void handleProtectedPaths(boolean encryption, String password) throws NoSuchAlgorithmException, IOException, InvalidKeyException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
-        for (String path : protectedPaths) {
-            File protectedFile = new File(path);
+    public List<File> getProtectedRoots() throws FileNotFoundException {
+        List<File> roots = new ArrayList<>();
+
+        for (Path path : protectedPaths.getRoots()) {
+            File protectedFile = path.toFile();
 
             if (!protectedFile.exists())
             {
                 throw new FileNotFoundException("No such file or directory: " + protectedFile.getAbsolutePath());
             }
 
-            if (protectedFile.isDirectory())
-            {
-                if (encryption) {
-                    Encryptor.encryptDirectory(protectedFile, password);
-                }
-                else{
-                    Encryptor.decryptDirectory(protectedFile, password);
-                }
+            roots.add(protectedFile);
+        }
+
+        return roots;
+    }
+
+    /**
+     * Encrypts or decrypts the given files and directories while holding their locks, so no other operation works on
+     * them or on anything inside them at the same time. Files completed by an interrupted operation on the same files
+     * are skipped, and the progress is journaled, so the operation is resumed if it is interrupted too.
+     *
+     * @param roots the files or directories to be processed
+     * @param encryption true to encrypt, false to decrypt
+     * @param session the session providing the key and ciphers
+     * @param result the result the outcome of every file is recorded into
+     * @return the given result
+     */
+    public BatchResult process(List<File> roots, boolean encryption, CryptoSession session, BatchResult result) {
+        ChunkStore store = encryption ? storeFor(roots) : null;
+
+        try (PathLockManager.PathLock ignored = lockManager.lock(roots);
+             ProgressJournal.Operation operation = beginOperation(encryption, roots)) {
+            BatchResult journaled = BatchResult.summarizing(fileResult -> {
+                operation.record(fileResult);
+                result.add(fileResult);
+            });
+
+            long stored = store != null ? store.getStoredBytes() : 0;
+            long deduplicated = store != null ? store.getDeduplicatedBytes() : 0;
+            directoryEngine.process(roots, encryption, session, journaled, store, operation::isCompleted);
+            operation.finish();
+
+            if (store == null) {
+                return result;
             }
 
-            else
-            {
-                if (encryption) {
-                    Encryptor.encrypt(protectedFile, password);
-                }
+            System.out.println("[Success]: Chunk store " + store.getDirectory() + ": " + (store.getStoredBytes() - stored) +
+                    " byte(s) encrypted, " + (store.getDeduplicatedBytes() - deduplicated) + " byte(s) already stored");
+            return result;
+        }
+    }
+
+    /**
+     * Returns the chunk store files are encrypted into, if the chunk store is enabled and all the given files and
+     * directories are protected. Other paths are always encrypted into containers of their own.
+     *
+     * @param roots the files or directories to be encrypted
+     * @return the chunk store, or null to encrypt every file into a container of its own
+     */
+    public ChunkStore storeFor(List<File> roots) {
+        if (chunkStore == null) {
+            return null;
+        }
 
-                else{
-                    Encryptor.decrypt(protectedFile, password);
-                }
+        for (File root : roots) {
+            if (!isProtected(root.toPath())) {
+                return null;
             }
         }
+
+        return chunkStore;
+    }
+
+    /**
+     * Handles the encryption or decryption of protected paths.
+     * All protected paths are processed concurrently by the directory engine, sharing a single crypto session,
+     * so the key is derived only once per batch.
+     *
+     * @param encryption a boolean indicating whether to encrypt (true) or decrypt (false) the protected paths
+     * @param password the password used for encryption or decryption
+     * @param result the result the outcome of every file is recorded into
+     * @return the given result
+     *
+     * @throws FileNotFoundException if any of the protected paths does not exist
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    private BatchResult handleProtectedPaths(boolean encryption, String password, BatchResult result) throws FileNotFoundException, NoSuchAlgorithmException {
+        List<File> roots = getProtectedRoots();
+
+        try (CryptoSession session = CryptoSession.open(password)) {
+            return process(roots, encryption, session, result);
+        }
     }
 
     private void loadProtectedPaths()
     {
+        ProtectedPathsStore loadedStore = new ProtectedPathsStore(Path.of(PATH_MANAGER_FILE), Path.of(PATH_MANAGER_JOURNAL_FILE));
+
         try
         {
-            String protectedPathsJSON = Files.readString(Path.of(PATH_MANAGER_FILE));
-            Set<?> tempSet = JSON.fromJSON(protectedPathsJSON, Set.class);
-            this.protectedPaths = tempSet.stream().filter(element -> element instanceof String).map(element -> (String)element).collect(Collectors.toSet());
+            this.protectedPaths = ProtectedPathIndex.of(loadedStore.load());
+            this.store = loadedStore;
         }catch (IOException e)
         {
-            System.err.println("WARNING: Could not load protectedPaths.json. Using empty protectedPaths File.");
+            System.err.println("WARNING: Could not load protectedPaths.json. Using empty protectedPaths, changes are not saved.");
+        }
+    }
+
+    private static void await(CompletableFuture<Void> persisted) throws IOException {
+        try {
+            persisted.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Could not persist the protected paths", e.getCause());
         }
     }
 }
\ No newline at end of file
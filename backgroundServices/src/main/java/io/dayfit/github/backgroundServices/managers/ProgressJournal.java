@@ -0,0 +1,613 @@
+package io.dayfit.github.backgroundServices.managers;
+
+import io.dayfit.github.shared.utils.FileResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Write-ahead journal of the progress of bulk encryption and decryption, so an interrupted operation is resumed
+ * instead of being run over the whole tree again.
+ * <p>
+ * Every operation gets a journal file of its own, starting with its id, its target state, its start time and its
+ * roots, which is synced before the first file is processed. Every file brought into the target state is appended
+ * together with its size and modification time afterward. The records are written by a single writer thread, which
+ * writes all records queued in the meantime at once and syncs every journal touched with a single fsync (group
+ * commit), so recording a file never waits for the disk. A finished operation deletes its journal, so every journal
+ * left behind belongs to an interrupted operation.
+ * </p>
+ * <p>
+ * A new operation takes over the journals of the interrupted operations whose roots all lie within its own roots.
+ * Files those operations completed towards the same target state are skipped, as long as their size and modification
+ * time are unchanged, so files modified since are processed again. Records lost to a crash only cause files to be
+ * checked again, as files already in the target state are recognized from their first bytes.
+ * </p>
+ */
+public class ProgressJournal implements AutoCloseable {
+    static final String EXTENSION = ".journal";
+    static final String MAGIC = "# alohomora progress 1";
+    static final char ID = '@';
+    static final char TARGET = '=';
+    static final char STARTED = '*';
+    static final char ROOT = '>';
+    static final char DONE = '+';
+    static final String ENCRYPTED = "encrypted";
+    static final String DECRYPTED = "decrypted";
+
+    private final Path directory;
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+
+    private Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a journal keeping the journal files of the operations in the given directory, which is created once the
+     * first operation begins.
+     *
+     * @param directory the directory of the journal files
+     */
+    public ProgressJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Lists the operations that have been interrupted, oldest first.
+     *
+     * @return the interrupted operations
+     * @throws IOException if the journal directory cannot be read
+     */
+    public List<Interrupted> interrupted() throws IOException {
+        List<Interrupted> interrupted = new ArrayList<>();
+
+        if (!Files.isDirectory(directory)) {
+            return interrupted;
+        }
+
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path journal : journals) {
+                Interrupted operation = read(journal);
+
+                if (operation != null && !active.contains(operation.id())) {
+                    interrupted.add(operation);
+                }
+            }
+        }
+
+        interrupted.sort((a, b) -> Long.compare(a.startedAt(), b.startedAt()));
+        return interrupted;
+    }
+
+    /**
+     * Begins an operation, taking over the interrupted operations whose roots all lie within the given roots. Returns
+     * once the journal of the operation is durable.
+     *
+     * @param encryption true if the operation encrypts, false if it decrypts
+     * @param roots      the files and directories the operation works on
+     * @return the operation, to be finished once all files have been processed or closed if it is interrupted
+     * @throws IOException if the journal of the operation cannot be written
+     */
+    public synchronized Operation begin(boolean encryption, List<File> roots) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The progress journal is closed");
+        }
+
+        List<Path> rootPaths = roots.stream().map(root -> root.getAbsoluteFile().toPath().normalize()).toList();
+        Map<String, Completed> completed = new LinkedHashMap<>();
+        List<Interrupted> superseded = new ArrayList<>();
+
+        for (Interrupted previous : interrupted()) {
+            if (!previous.roots().stream().map(Path::of).allMatch(root -> rootPaths.stream().anyMatch(root::startsWith))) {
+                continue;
+            }
+
+            if (previous.encryption() == encryption) {
+                completed.putAll(previous.completed());
+            }
+            superseded.add(previous);
+        }
+
+        String id = UUID.randomUUID().toString();
+        long startedAt = System.currentTimeMillis();
+        StringBuilder header = new StringBuilder(MAGIC).append('\n')
+                .append(ID).append(id).append('\n')
+                .append(TARGET).append(encryption ? ENCRYPTED : DECRYPTED).append('\n')
+                .append(STARTED).append(startedAt).append('\n');
+
+        for (Path root : rootPaths) {
+            header.append(ROOT).append(escape(root.toString())).append('\n');
+        }
+        completed.forEach((path, file) -> header.append(doneLine(path, file)));
+
+        Files.createDirectories(directory);
+        Path path = directory.resolve(id + EXTENSION);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        try {
+            write(channel, header.toString());
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+
+        // the previous journals are only removed once the one taking them over is in place
+        for (Interrupted previous : superseded) {
+            Files.deleteIfExists(previous.path());
+        }
+
+        startWriter();
+        active.add(id);
+
+        if (!completed.isEmpty()) {
+            System.out.println("[Success]: Resuming " + (encryption ? "encryption" : "decryption") + ", " +
+                    completed.size() + " file(s) have already been processed by an interrupted operation");
+        }
+
+        return new Operation(this, id, path, channel, completed);
+    }
+
+    /**
+     * Writes all queued records and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        Thread running;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = writer;
+
+            if (running == null) {
+                return;
+            }
+
+            // added under the lock, so no record can be queued behind it
+            queue.add(Record.POISON);
+        }
+
+        try {
+            running.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startWriter() {
+        if (writer == null) {
+            writer = new Thread(this::writeRecords, "alohomora-progress-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Queues a record for the writer thread. Records queued after the journal has been closed are never written, so
+     * they fail right away instead of waiting for a writer that is gone, and the journal of their operation is kept.
+     *
+     * @param record the record to be written
+     * @return the future completed once the record has been written
+     */
+    private synchronized CompletableFuture<Void> enqueue(Record record) {
+        if (closed) {
+            record.committed.completeExceptionally(new IllegalStateException("The progress journal is closed"));
+        } else {
+            queue.add(record);
+        }
+        return record.committed;
+    }
+
+    private void writeRecords() {
+        List<Record> batch = new ArrayList<>();
+
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+
+                boolean stop = commit(batch);
+                batch.clear();
+
+                if (stop) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a batch of records, syncing every journal touched once, then ends the operations asking for it.
+     *
+     * @param batch the records to be written
+     * @return true if the batch contained the request to stop
+     */
+    private boolean commit(List<Record> batch) {
+        Map<Operation, StringBuilder> lines = new LinkedHashMap<>();
+        boolean stop = false;
+
+        for (Record record : batch) {
+            if (record == Record.POISON) {
+                stop = true;
+            } else {
+                StringBuilder operationLines = lines.computeIfAbsent(record.operation, operation -> new StringBuilder());
+                if (record.line != null) {
+                    operationLines.append(record.line);
+                }
+            }
+        }
+
+        Map<Operation, IOException> failures = new LinkedHashMap<>();
+
+        lines.forEach((operation, text) -> {
+            try {
+                if (!text.isEmpty()) {
+                    write(operation.channel, text.toString());
+                    operation.channel.force(false);
+                }
+            } catch (IOException e) {
+                failures.put(operation, e);
+            }
+        });
+
+        for (Record record : batch) {
+            if (record == Record.POISON) {
+                continue;
+            }
+
+            IOException failure = failures.get(record.operation);
+
+            try {
+                if (record.end != End.NONE) {
+                    record.operation.end(record.end == End.FINISH && failure == null);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            if (failure != null) {
+                record.committed.completeExceptionally(failure);
+            } else {
+                record.committed.complete(null);
+            }
+        }
+
+        failures.forEach((operation, e) -> System.err.println("[Warning]: Could not write the progress journal " +
+                operation.path.getFileName() + ": " + e.getMessage()));
+
+        return stop;
+    }
+
+    /**
+     * Reads the journal of an interrupted operation, discarding a record torn by a crash.
+     *
+     * @param journal the journal file
+     * @return the operation, or null if the journal is not a valid progress journal
+     * @throws IOException if the journal cannot be read
+     */
+    private static Interrupted read(Path journal) throws IOException {
+        byte[] content;
+
+        try {
+            content = Files.readAllBytes(journal);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        String id = null;
+        Boolean encryption = null;
+        long startedAt = 0;
+        List<String> roots = new ArrayList<>();
+        Map<String, Completed> completed = new LinkedHashMap<>();
+        int start = 0;
+        boolean first = true;
+
+        for (int end = 0; end < content.length; end++) {
+            if (content[end] != '\n') {
+                continue;
+            }
+
+            String line = new String(content, start, end - start, StandardCharsets.UTF_8);
+            start = end + 1;
+
+            if (first) {
+                if (!line.equals(MAGIC)) {
+                    return null;
+                }
+                first = false;
+                continue;
+            }
+
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String value = line.substring(1);
+            switch (line.charAt(0)) {
+                case ID -> id = value;
+                case TARGET -> encryption = value.equals(ENCRYPTED);
+                case STARTED -> startedAt = parseLong(value);
+                case ROOT -> roots.add(unescape(value));
+                case DONE -> parseDone(value, completed);
+                default -> {
+                    // records of later versions are skipped
+                }
+            }
+        }
+
+        if (id == null || encryption == null || roots.isEmpty()) {
+            return null;
+        }
+
+        return new Interrupted(journal, id, encryption, startedAt, roots, completed);
+    }
+
+    private static void parseDone(String value, Map<String, Completed> completed) {
+        int firstSpace = value.indexOf(' ');
+        int secondSpace = firstSpace < 0 ? -1 : value.indexOf(' ', firstSpace + 1);
+
+        if (secondSpace < 0) {
+            return;
+        }
+
+        long modified = parseLong(value.substring(0, firstSpace));
+        long size = parseLong(value.substring(firstSpace + 1, secondSpace));
+        completed.put(unescape(value.substring(secondSpace + 1)), new Completed(size, modified));
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String doneLine(String path, Completed file) {
+        return DONE + Long.toString(file.modified()) + ' ' + file.size() + ' ' + escape(path) + '\n';
+    }
+
+    private static void write(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String escape(String path) {
+        return path.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+
+        StringBuilder path = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char character = line.charAt(i);
+
+            if (character == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                path.append(escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                path.append(character);
+            }
+        }
+
+        return path.toString();
+    }
+
+    /**
+     * Operation left unfinished by a previous run.
+     *
+     * @param path       the journal of the operation
+     * @param id         the id of the operation
+     * @param encryption true if the operation encrypted, false if it decrypted
+     * @param startedAt  the time the operation started at, in milliseconds since the epoch
+     * @param roots      the absolute paths of the files and directories the operation worked on
+     * @param completed  the files the operation has brought into its target state, by absolute path
+     */
+    public record Interrupted(Path path, String id, boolean encryption, long startedAt, List<String> roots, Map<String, Completed> completed) {
+    }
+
+    /**
+     * Size and modification time of a file right after it has been brought into the target state.
+     *
+     * @param size     the size in bytes
+     * @param modified the modification time in milliseconds since the epoch
+     */
+    public record Completed(long size, long modified) {
+    }
+
+    /**
+     * Bulk operation whose progress is journaled. Recording files is thread-safe.
+     */
+    public static class Operation implements AutoCloseable {
+        private static final Operation UNTRACKED = new Operation(null, null, null, null, Map.of());
+
+        private final ProgressJournal journal;
+        private final String id;
+        private final Path path;
+        private final FileChannel channel;
+        private final Map<String, Completed> completed;
+        private final Set<String> recorded = ConcurrentHashMap.newKeySet();
+        private boolean ended;
+
+        private Operation(ProgressJournal journal, String id, Path path, FileChannel channel, Map<String, Completed> completed) {
+            this.journal = journal;
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.completed = completed;
+        }
+
+        /**
+         * @return an operation whose progress is not journaled, for callers without a journal
+         */
+        public static Operation untracked() {
+            return UNTRACKED;
+        }
+
+        /**
+         * @return the id of the operation, null if its progress is not journaled
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Checks whether an interrupted operation taken over by this one has already brought the file into the target
+         * state, and the file has not been modified since.
+         *
+         * @param file     the file
+         * @param size     the current size of the file
+         * @param modified the current modification time of the file in milliseconds since the epoch
+         * @return true if the file does not need to be processed again
+         */
+        public boolean isCompleted(Path file, long size, long modified) {
+            Completed done = completed.get(file.toAbsolutePath().normalize().toString());
+            return done != null && done.size() == size && done.modified() == modified;
+        }
+
+        /**
+         * Checks whether the file does not need to be processed again, see {@link #isCompleted(Path, long, long)}.
+         *
+         * @param file       the file
+         * @param attributes the current attributes of the file
+         * @return true if the file does not need to be processed again
+         */
+        public boolean isCompleted(Path file, BasicFileAttributes attributes) {
+            return isCompleted(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        /**
+         * Queues the outcome of a file to be journaled. Files in the target state are recorded with their current
+         * size and modification time, failed files are not recorded, so they are processed again on resumption.
+         *
+         * @param result the outcome of the file
+         */
+        public void record(FileResult result) {
+            if (journal == null || result.status() == FileResult.Status.FAILED) {
+                return;
+            }
+
+            Path file = result.file().getAbsoluteFile().toPath().normalize();
+
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                Completed done = new Completed(attributes.size(), attributes.lastModifiedTime().toMillis());
+
+                if (done.equals(completed.get(file.toString())) || !recorded.add(file.toString())) {
+                    return;
+                }
+
+                journal.enqueue(new Record(this, doneLine(file.toString(), done), End.NONE));
+            } catch (IOException e) {
+                // the file is checked again on resumption
+            }
+        }
+
+        /**
+         * Ends the operation once all its files have been processed, deleting its journal once the queued records
+         * have been written.
+         */
+        public void finish() {
+            end(End.FINISH);
+        }
+
+        /**
+         * Ends the operation. An operation that has not been finished is left interrupted: its queued records are
+         * written and its journal is kept, so the next operation on the same files resumes it.
+         */
+        @Override
+        public void close() {
+            end(End.CLOSE);
+        }
+
+        private void end(End end) {
+            synchronized (this) {
+                if (journal == null || ended) {
+                    return;
+                }
+                ended = true;
+            }
+
+            try {
+                journal.enqueue(new Record(this, null, end)).join();
+            } catch (CompletionException e) {
+                System.err.println("[Warning]: Could not end the progress journal " + path.getFileName() + ": " + e.getCause().getMessage());
+            }
+        }
+
+        /**
+         * Closes the journal file, deleting it if the operation has been finished. Called by the writer thread once
+         * all records queued before have been written.
+         *
+         * @param finished true to delete the journal
+         * @throws IOException if the journal cannot be closed or deleted
+         */
+        private void end(boolean finished) throws IOException {
+            journal.active.remove(id);
+
+            try {
+                channel.close();
+            } finally {
+                if (finished) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * How a record ends its operation.
+     */
+    private enum End {
+        NONE, FINISH, CLOSE
+    }
+
+    /**
+     * Line waiting to be written by the writer thread, or the end of an operation.
+     */
+    private static class Record {
+        static final Record POISON = new Record(null, null, End.NONE);
+
+        final Operation operation;
+        final String line;
+        final End end;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        Record(Operation operation, String line, End end) {
+            this.operation = operation;
+            this.line = line;
+            this.end = end;
+        }
+    }
+}
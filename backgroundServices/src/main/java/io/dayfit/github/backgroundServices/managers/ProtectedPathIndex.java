@@ -0,0 +1,510 @@
+package io.dayfit.github.backgroundServices.managers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Immutable index of the protected paths, stored as a trie of path components.
+ * <p>
+ * Every path is resolved to its real path before it is indexed, so symlinked aliases of the same file or directory
+ * are stored once. Checking whether a path is protected walks the trie once, in O(depth of the path), and the roots
+ * to be processed are the topmost entries only, so entries nested inside another protected directory are not
+ * processed twice.
+ * </p>
+ * <p>
+ * Adding or removing a path returns a new index which copies only the nodes along that path and shares the rest of
+ * the trie, so an index can be read by any number of threads while a changed copy is being built. The children of
+ * every node are kept in a persistent hash trie themselves, so copying a node with many children only copies
+ * O(log n) small arrays of them instead of all its siblings.
+ * </p>
+ */
+public class ProtectedPathIndex {
+    private static final ProtectedPathIndex EMPTY = new ProtectedPathIndex(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private ProtectedPathIndex(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the index without any entries
+     */
+    public static ProtectedPathIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds an index of the given paths. Paths whose alias comes earlier are left out.
+     *
+     * @param paths the paths as entered by the user
+     * @return the index of the paths
+     */
+    public static ProtectedPathIndex of(Collection<String> paths) {
+        Node root = new Node(Children.EMPTY, null, null);
+        int size = 0;
+
+        // the nodes are not shared yet, so they are filled in place
+        for (String path : paths) {
+            Path canonical = canonicalize(path);
+            Node node = root;
+
+            for (String component : components(canonical)) {
+                Node child = node.children.get(component);
+
+                if (child == null) {
+                    child = new Node(Children.EMPTY, null, null);
+                    node.children = node.children.put(component, child);
+                }
+                node = child;
+            }
+
+            if (node.entry == null) {
+                node.entry = path;
+                node.canonical = canonical;
+                size++;
+            }
+        }
+
+        return size == 0 ? EMPTY : new ProtectedPathIndex(root, size);
+    }
+
+    /**
+     * Adds a path to the index.
+     *
+     * @param path the path as entered by the user
+     * @return the index with the path added, or this index if it, or an alias of it, already is in the index
+     */
+    public ProtectedPathIndex with(String path) {
+        Path canonical = canonicalize(path);
+        List<String> components = components(canonical);
+
+        if (find(components, false) != null) {
+            return this;
+        }
+
+        return new ProtectedPathIndex(insert(root, components, 0, path, canonical), size + 1);
+    }
+
+    /**
+     * Removes a path from the index.
+     *
+     * @param path the path as entered by the user, or any alias of it
+     * @return the index with the path removed, or this index if the path is not in the index
+     */
+    public ProtectedPathIndex without(String path) {
+        List<String> components = components(canonicalize(path));
+
+        if (find(components, false) == null) {
+            return this;
+        }
+
+        return new ProtectedPathIndex(delete(root, components, 0), size - 1);
+    }
+
+    /**
+     * Looks up the entry a path, or any alias of it, has been added as.
+     *
+     * @param path the path to look up
+     * @return the path as entered by the user, or null if it is not in the index
+     */
+    public String getEntry(String path) {
+        Node node = find(components(canonicalize(path)), false);
+        return node != null ? node.entry : null;
+    }
+
+    /**
+     * Checks whether a path, or any alias of it, has been added to the index.
+     *
+     * @param path the path to check
+     * @return true if the path itself is an entry of the index
+     */
+    public boolean contains(String path) {
+        return getEntry(path) != null;
+    }
+
+    /**
+     * Checks whether a file is protected, i.e. it is an entry of the index or lies inside one.
+     *
+     * @param path the path to check
+     * @return true if the path is protected
+     */
+    public boolean isProtected(Path path) {
+        return find(components(canonicalize(path.toString())), true) != null;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the entries as entered by the user
+     */
+    public Set<String> getPaths() {
+        Set<String> paths = new LinkedHashSet<>();
+        collect(node -> {
+            paths.add(node.entry);
+            return false;
+        });
+        return Collections.unmodifiableSet(paths);
+    }
+
+    /**
+     * Collects the topmost entries, skipping every entry lying inside another one.
+     *
+     * @return the real paths of the entries to be processed
+     */
+    public List<Path> getRoots() {
+        List<Path> roots = new ArrayList<>();
+        collect(node -> {
+            roots.add(node.canonical);
+            return true;
+        });
+        return roots;
+    }
+
+    /**
+     * Visits the entries of the trie.
+     *
+     * @param visitor called with every entry node, returning true to skip the entries below it
+     */
+    private void collect(EntryVisitor visitor) {
+        if (root == null) {
+            return;
+        }
+
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+
+            if (node.entry != null && visitor.visit(node)) {
+                continue;
+            }
+
+            node.children.forEach(stack::push);
+        }
+    }
+
+    /**
+     * Walks the trie along the given path.
+     *
+     * @param components the components of the real path to walk along
+     * @param stopAtEntry true to stop at the first entry on the way, false to walk the whole path
+     * @return the first entry on the way if stopAtEntry is set, otherwise the node of the path if it is an entry;
+     *         null if there is none
+     */
+    private Node find(List<String> components, boolean stopAtEntry) {
+        Node node = root;
+
+        for (String component : components) {
+            if (node == null || stopAtEntry && node.entry != null) {
+                break;
+            }
+
+            node = node.children.get(component);
+        }
+
+        return node != null && node.entry != null ? node : null;
+    }
+
+    /**
+     * Copies the nodes along the path, adding the entry at its end.
+     *
+     * @return the copy of the given node
+     */
+    private static Node insert(Node node, List<String> components, int depth, String entry, Path canonical) {
+        Children children = node == null ? Children.EMPTY : node.children;
+
+        if (depth == components.size()) {
+            return new Node(children, entry, canonical);
+        }
+
+        String component = components.get(depth);
+        Children copy = children.put(component, insert(children.get(component), components, depth + 1, entry, canonical));
+
+        return node == null ? new Node(copy, null, null) : new Node(copy, node.entry, node.canonical);
+    }
+
+    /**
+     * Copies the nodes along the path, removing the entry at its end and pruning the branch that no longer leads to
+     * any entry.
+     *
+     * @return the copy of the given node, or null if it is left empty
+     */
+    private static Node delete(Node node, List<String> components, int depth) {
+        Node copy;
+
+        if (depth == components.size()) {
+            copy = new Node(node.children, null, null);
+        } else {
+            String component = components.get(depth);
+            Node child = delete(node.children.get(component), components, depth + 1);
+            Children children = child == null ? node.children.remove(component) : node.children.put(component, child);
+
+            copy = new Node(children, node.entry, node.canonical);
+        }
+
+        return copy.entry == null && copy.children.isEmpty() && depth > 0 ? null : copy;
+    }
+
+    /**
+     * Resolves a path to its real path, following symlinks. For paths that do not exist, the longest existing
+     * parent is resolved and the rest of the path is appended to it.
+     *
+     * @param path the path to resolve
+     * @return the real path, or the absolute normalized path if none of its parents exists
+     */
+    static Path canonicalize(String path) {
+        Path absolute = Path.of(path).toAbsolutePath().normalize();
+
+        Path existing = absolute;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+
+        try {
+            return existing == null ? absolute : existing.toRealPath().resolve(existing.relativize(absolute));
+        } catch (IOException e) {
+            return absolute;
+        }
+    }
+
+    /**
+     * Splits an absolute path into the keys of its trie nodes, starting with its root, e.g. "/" or "C:\\".
+     *
+     * @param path the absolute path to split
+     * @return the components of the path
+     */
+    static List<String> components(Path path) {
+        List<String> components = new ArrayList<>(path.getNameCount() + 1);
+
+        if (path.getRoot() != null) {
+            components.add(path.getRoot().toString());
+        }
+
+        for (Path name : path) {
+            components.add(name.toString());
+        }
+
+        return components;
+    }
+
+    private interface EntryVisitor {
+        boolean visit(Node node);
+    }
+
+    /**
+     * Node of the trie, holding the path as entered by the user and its real path if it is an entry.
+     * Nodes are never changed once the index holding them has been built.
+     */
+    private static class Node {
+        private Children children;
+        private String entry;
+        private Path canonical;
+
+        Node(Children children, String entry, Path canonical) {
+            this.children = children;
+            this.entry = entry;
+            this.canonical = canonical;
+        }
+    }
+
+    /**
+     * Persistent hash array mapped trie of the children of a node, keyed by their path component. Every level consumes
+     * five bits of the hash and stores its occupied slots densely, indexed by a bitmap; each slot holds either a child
+     * with its component, or a nested level if several components share these bits. Keys whose hashes are equal are
+     * kept in a plain list once the hash is used up. Changing a child copies only the levels on the way to it.
+     */
+    private static final class Children {
+        private static final Children EMPTY = new Children(0, new Object[0], false);
+        private static final int BITS = 5;
+        private static final int MAX_SHIFT = 30;
+
+        private final int bitmap;
+        // pairs of a component and its node, or of null and the nested level
+        private final Object[] slots;
+        private final boolean collisions;
+
+        private Children(int bitmap, Object[] slots, boolean collisions) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+            this.collisions = collisions;
+        }
+
+        boolean isEmpty() {
+            return slots.length == 0;
+        }
+
+        Node get(String key) {
+            Children level = this;
+            int hash = key.hashCode();
+
+            for (int shift = 0; ; shift += BITS) {
+                if (level.collisions) {
+                    int i = level.indexOf(key);
+                    return i < 0 ? null : (Node) level.slots[i + 1];
+                }
+
+                int bit = bit(hash, shift);
+                if ((level.bitmap & bit) == 0) {
+                    return null;
+                }
+
+                int i = level.slotOf(bit);
+                if (level.slots[i] != null) {
+                    return key.equals(level.slots[i]) ? (Node) level.slots[i + 1] : null;
+                }
+                level = (Children) level.slots[i + 1];
+            }
+        }
+
+        Children put(String key, Node value) {
+            return put(key, key.hashCode(), value, 0);
+        }
+
+        Children remove(String key) {
+            return remove(key, key.hashCode(), 0);
+        }
+
+        void forEach(Consumer<Node> action) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i] != null) {
+                    action.accept((Node) slots[i + 1]);
+                } else {
+                    ((Children) slots[i + 1]).forEach(action);
+                }
+            }
+        }
+
+        private Children put(String key, int hash, Node value, int shift) {
+            if (collisions) {
+                int i = indexOf(key);
+                return i < 0 ? new Children(0, inserted(slots.length, key, value), true) : replaced(i, key, value);
+            }
+
+            int bit = bit(hash, shift);
+            int i = slotOf(bit);
+
+            if ((bitmap & bit) == 0) {
+                return new Children(bitmap | bit, inserted(i, key, value), false);
+            }
+
+            Object existing = slots[i];
+            if (existing == null) {
+                return replaced(i, null, ((Children) slots[i + 1]).put(key, hash, value, shift + BITS));
+            }
+            if (key.equals(existing)) {
+                return replaced(i, key, value);
+            }
+
+            return replaced(i, null, level((String) existing, (Node) slots[i + 1], key, hash, value, shift + BITS));
+        }
+
+        private Children remove(String key, int hash, int shift) {
+            if (collisions) {
+                int i = indexOf(key);
+                return i < 0 ? this : removed(i, 0);
+            }
+
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+
+            int i = slotOf(bit);
+            Object existing = slots[i];
+
+            if (existing == null) {
+                Children level = (Children) slots[i + 1];
+                Children changed = level.remove(key, hash, shift + BITS);
+
+                if (changed == level) {
+                    return this;
+                }
+                return changed.isEmpty() ? removed(i, bit) : replaced(i, null, changed);
+            }
+
+            return key.equals(existing) ? removed(i, bit) : this;
+        }
+
+        /**
+         * Creates the level holding two components whose hashes share all bits consumed so far.
+         */
+        private static Children level(String key1, Node value1, String key2, int hash2, Node value2, int shift) {
+            if (shift > MAX_SHIFT) {
+                return new Children(0, new Object[]{key1, value1, key2, value2}, true);
+            }
+
+            int index1 = (key1.hashCode() >>> shift) & 31;
+            int index2 = (hash2 >>> shift) & 31;
+
+            if (index1 == index2) {
+                return new Children(1 << index1, new Object[]{null, level(key1, value1, key2, hash2, value2, shift + BITS)}, false);
+            }
+
+            Object[] slots = index1 < index2 ? new Object[]{key1, value1, key2, value2} : new Object[]{key2, value2, key1, value1};
+            return new Children((1 << index1) | (1 << index2), slots, false);
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private int slotOf(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private int indexOf(String key) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (key.equals(slots[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Object[] inserted(int i, String key, Object value) {
+            Object[] copy = new Object[slots.length + 2];
+            System.arraycopy(slots, 0, copy, 0, i);
+            copy[i] = key;
+            copy[i + 1] = value;
+            System.arraycopy(slots, i, copy, i + 2, slots.length - i);
+            return copy;
+        }
+
+        private Children replaced(int i, String key, Object value) {
+            Object[] copy = slots.clone();
+            copy[i] = key;
+            copy[i + 1] = value;
+            return new Children(bitmap, copy, collisions);
+        }
+
+        private Children removed(int i, int bit) {
+            if (slots.length == 2) {
+                return EMPTY;
+            }
+
+            Object[] copy = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, copy, 0, i);
+            System.arraycopy(slots, i + 2, copy, i, slots.length - i - 2);
+            return new Children(bitmap & ~bit, copy, collisions);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package io.dayfit.github.backgroundServices.managers;
+
+import io.dayfit.github.backgroundServices.components.ConfigurationReader;
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.CryptoSession;
+import io.dayfit.github.shared.utils.Encryptor;
+import io.dayfit.github.shared.utils.FileResult;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the protected paths while they are decrypted and re-encrypts files in the background once they have been
+ * left alone for the configured quiet period.
+ * <p>
+ * The watcher is armed by decrypting the protected paths, which provides the password, and it starts with every
+ * file of the protected paths pending. They are found by walking the protected paths once their directories are
+ * watched, so files changed between decrypting and arming are not missed. Change events are coalesced per file, every change restarting the quiet period of its file,
+ * so files being worked on stay decrypted while everything else is encrypted again. Encrypting the protected paths
+ * then only has to flush the files still pending, unless events have been lost or the protected paths have changed
+ * since the watcher was armed.
+ * </p>
+ */
+@Component
+public class ProtectedPathWatcher {
+    private final PathManager pathManager;
+    private final boolean enabled;
+    private final long quietPeriodNanos;
+    private final Map<Path, Long> pending = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+
+    private WatchService watchService;
+    private ScheduledExecutorService scheduler;
+    private CryptoSession session;
+    private Set<Path> watchedRoots = Set.of();
+    private volatile boolean complete;
+
+    /**
+     * Constructor for ProtectedPathWatcher.
+     *
+     * @param pathManager the PathManager providing the protected paths and the engine encrypting them
+     * @param configurationReader the reader providing whether the watcher is enabled and its quiet period
+     */
+    @Autowired
+    public ProtectedPathWatcher(PathManager pathManager, ConfigurationReader configurationReader) {
+        this.pathManager = pathManager;
+        this.enabled = configurationReader.isWatcherEnabled();
+        this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(configurationReader.getWatcherQuietPeriod(), 0));
+    }
+
+    /**
+     * @return true if the watcher is watching the protected paths
+     */
+    public boolean isArmed() {
+        synchronized (lock) {
+            return session != null;
+        }
+    }
+
+    /**
+     * @return the number of files waiting to be encrypted
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Starts watching the protected paths, replacing any previous watch. Does nothing if the watcher is disabled.
+     *
+     * @param password the password used for encrypting changed files
+     * @param decrypted the result of decrypting the protected paths, a failure meaning the pending files may not cover
+     *                  every protected file
+     * @throws IOException if the protected paths cannot be watched
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    public void arm(String password, BatchResult decrypted) throws IOException, NoSuchAlgorithmException {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (lock) {
+            disarm();
+
+            Set<Path> roots = resolveRoots();
+
+            session = CryptoSession.open(password);
+            watchService = FileSystems.getDefault().newWatchService();
+            watchedRoots = roots;
+            complete = decrypted.isSuccessful();
+
+            try {
+                // every directory is watched before its files are walked, so no change is missed in between
+                for (Path root : roots) {
+                    register(root, true);
+                }
+            } catch (IOException e) {
+                disarm();
+                throw e;
+            }
+
+            WatchService service = watchService;
+            Thread watcherThread = new Thread(() -> processEvents(service), "alohomora-watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+
+            long tick = Math.max(TimeUnit.NANOSECONDS.toMillis(quietPeriodNanos) / 2, 100);
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "alohomora-watcher-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> encryptPending(false), tick, tick, TimeUnit.MILLISECONDS);
+        }
+
+        System.out.println("[Success]: Watching protected paths, " + pending.size() + " file(s) pending encryption");
+    }
+
+    /**
+     * Checks whether encrypting the pending files is enough to encrypt all protected paths with the given password,
+     * i.e. no change events have been lost, the protected paths are still the ones being watched and the watcher
+     * encrypts with the same password.
+     *
+     * @param password the password the protected paths are to be encrypted with
+     * @return true if flushing the watcher encrypts all protected paths
+     */
+    public boolean coversProtectedPaths(String password) {
+        synchronized (lock) {
+            if (session == null || !complete) {
+                return false;
+            }
+
+            try (CryptoSession requested = CryptoSession.open(password)) {
+                return MessageDigest.isEqual(requested.getKey().getEncoded(), session.getKey().getEncoded())
+                        && watchedRoots.equals(resolveRoots());
+            } catch (IOException | NoSuchAlgorithmException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Encrypts all pending files right away, regardless of their quiet period.
+     *
+     * @return the result of every encrypted file
+     */
+    public BatchResult flush() {
+        return encryptPending(true);
+    }
+
+    /**
+     * Stops watching the protected paths and forgets the pending files and the password.
+     */
+    public void disarm() {
+        synchronized (lock) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    System.err.println("[Warning]: Could not close the protected paths watcher: " + e.getMessage());
+                }
+                watchService = null;
+            }
+
+            if (session != null) {
+                session.close();
+                session = null;
+            }
+
+            watchedDirectories.clear();
+            pending.clear();
+            watchedRoots = Set.of();
+            complete = false;
+        }
+    }
+
+    /**
+     * Encrypts the pending files before the application stops, so only they are left for the shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (isArmed()) {
+            BatchResult result = flush();
+            System.out.println("[Success]: Flushed pending protected files (" + result + ")");
+            disarm();
+        }
+    }
+
+    private BatchResult encryptPending(boolean all) {
+        synchronized (lock) {
+            BatchResult result = new BatchResult();
+
+            if (session == null || pending.isEmpty()) {
+                return result;
+            }
+
+            long now = System.nanoTime();
+            List<File> due = new ArrayList<>();
+            Map<Path, Long> taken = new ConcurrentHashMap<>();
+
+            pending.forEach((path, changedAt) -> {
+                if (all || now - changedAt >= quietPeriodNanos) {
+                    due.add(path.toFile());
+                    taken.put(path, changedAt);
+                }
+            });
+
+            if (due.isEmpty()) {
+                return result;
+            }
+
+            // files changed again while they were being encrypted stay pending
+            taken.forEach(pending::remove);
+            pathManager.process(due, true, session, result);
+
+            for (FileResult failure : result.getFailures()) {
+                if (failure.file().exists()) {
+                    pending.putIfAbsent(failure.file().toPath().toAbsolutePath().normalize(), now);
+                }
+            }
+
+            return result;
+        }
+    }
+
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path directory = watchedDirectories.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        complete = false;
+                        System.err.println("[Warning]: Protected paths watcher lost events, the next encryption re-walks all protected paths");
+                        continue;
+                    }
+
+                    if (directory != null && event.context() instanceof Path name) {
+                        handleEvent(event.kind(), directory.resolve(name));
+                    }
+                }
+
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ignored) {
+            // disarmed
+        }
+    }
+
+    private void handleEvent(WatchEvent.Kind<?> kind, Path path) {
+        if (Encryptor.isTemporaryFile(path)) {
+            return;
+        }
+
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            pending.remove(path);
+            return;
+        }
+
+        if (Files.isDirectory(path)) {
+            // directories created next to a protected file are not protected
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE && isWithinWatchedRoots(path)) {
+                try {
+                    register(path, true);
+                } catch (IOException e) {
+                    complete = false;
+                    System.err.println("[Warning]: Could not watch " + path + ": " + e.getMessage());
+                }
+            }
+            return;
+        }
+
+        if (Files.isRegularFile(path) && isWithinWatchedRoots(path)) {
+            pending.put(path, System.nanoTime());
+        }
+    }
+
+    private Set<Path> resolveRoots() throws IOException {
+        Set<Path> roots = new HashSet<>();
+
+        for (File root : pathManager.getProtectedRoots()) {
+            roots.add(root.toPath().toAbsolutePath().normalize());
+        }
+
+        return roots;
+    }
+
+    private boolean isWithinWatchedRoots(Path path) {
+        for (Path root : watchedRoots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers a protected path with the watch service. Directories are registered recursively, single files through
+     * their parent directory.
+     *
+     * @param root the path to register
+     * @param markPending true to mark the files found as pending
+     * @throws IOException if a directory cannot be registered
+     */
+    private void register(Path root, boolean markPending) throws IOException {
+        if (!Files.isDirectory(root)) {
+            Path parent = root.toAbsolutePath().getParent();
+            watchedDirectories.put(parent.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), parent);
+
+            if (markPending && Files.isRegularFile(root) && !Encryptor.isTemporaryFile(root)) {
+                pending.put(root, System.nanoTime());
+            }
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                watchedDirectories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), directory);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (markPending && attributes.isRegularFile() && !Encryptor.isTemporaryFile(file) && isWithinWatchedRoots(file)) {
+                    pending.put(file, System.nanoTime());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,375 @@
+package io.dayfit.github.backgroundServices.managers;
+
+import io.dayfit.github.shared.JSON;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Persists the protected paths as a snapshot plus an append-only journal of changes.
+ * <p>
+ * Additions and removals are appended to the journal by a single writer thread, which writes every record queued
+ * in the meantime at once and syncs them with a single fsync (group commit). Once the journal outgrows the snapshot,
+ * the writer compacts it: a new snapshot is written to a temporary file, synced and atomically renamed over the old
+ * one, and the journal is truncated once the rename has been synced too. Loading reads the snapshot and replays the
+ * journal on top of it; replaying is idempotent, so a crash between renaming the snapshot and truncating the journal
+ * loses nothing, and a record torn by a crash is discarded.
+ * </p>
+ * <p>
+ * The snapshot keeps the JSON format of the protected paths file, so existing files are loaded as they are.
+ * </p>
+ */
+public class ProtectedPathsStore implements AutoCloseable {
+    private static final char ADD = '+';
+    private static final char REMOVE = '-';
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Set<String> state = new LinkedHashSet<>();
+
+    private FileChannel journal;
+    private Thread writer;
+    private int journalRecords;
+    private volatile boolean closed;
+
+    /**
+     * Creates a store. Nothing is read or written until it is loaded.
+     *
+     * @param snapshotPath the location of the snapshot
+     * @param journalPath the location of the journal
+     */
+    public ProtectedPathsStore(Path snapshotPath, Path journalPath) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * Reads the snapshot, replays the journal on top of it and starts the writer thread.
+     *
+     * @return the persisted protected paths, in the order they have been added
+     * @throws IOException if the snapshot or the journal cannot be read, or the journal cannot be opened for writing
+     */
+    public synchronized Set<String> load() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("The protected paths store is already loaded");
+        }
+
+        try {
+            String content = Files.readString(snapshotPath);
+            Set<?> snapshot = content.isBlank() ? Set.of() : JSON.fromJSON(content, Set.class);
+            snapshot.stream().filter(element -> element instanceof String).forEach(element -> state.add((String) element));
+        } catch (NoSuchFileException e) {
+            // nothing has been compacted yet
+        }
+
+        long validLength = replayJournal();
+
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.truncate(validLength);
+        journal.position(validLength);
+
+        writer = new Thread(this::writeRecords, "alohomora-paths-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        return new LinkedHashSet<>(state);
+    }
+
+    /**
+     * Queues the addition of a protected path.
+     *
+     * @param path the added path
+     * @return a future completed once the record is durable
+     */
+    public CompletableFuture<Void> add(String path) {
+        return enqueue(new Record(ADD, path));
+    }
+
+    /**
+     * Queues the removal of a protected path.
+     *
+     * @param path the removed path
+     * @return a future completed once the record is durable
+     */
+    public CompletableFuture<Void> remove(String path) {
+        return enqueue(new Record(REMOVE, path));
+    }
+
+    /**
+     * Queues a compaction of the journal into a new snapshot.
+     *
+     * @return a future completed once the new snapshot is durable
+     */
+    public CompletableFuture<Void> compact() {
+        return enqueue(new Record((char) 0, null));
+    }
+
+    /**
+     * Writes all queued records and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        Thread running;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = writer;
+
+            if (running == null) {
+                return;
+            }
+
+            // added under the lock, so no record can be queued behind it
+            queue.add(Record.POISON);
+        }
+
+        try {
+            running.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a record for the writer thread. Records queued before the store is loaded or after it has been closed
+     * are never written, so they fail right away instead of waiting for a writer that is not running.
+     *
+     * @param record the record to be written
+     * @return the future completed once the record is durable
+     */
+    private synchronized CompletableFuture<Void> enqueue(Record record) {
+        if (closed || writer == null) {
+            record.committed.completeExceptionally(new IllegalStateException("The protected paths store is not open"));
+        } else {
+            queue.add(record);
+        }
+        return record.committed;
+    }
+
+    private void writeRecords() {
+        List<Record> batch = new ArrayList<>();
+
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+
+                boolean stop = commit(batch);
+                batch.clear();
+
+                if (stop) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("[Warning]: Could not close the protected paths journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of records to the journal with a single fsync, compacting it when it has grown too large.
+     * The records are only applied to the state once they are durable, so a failed write is never compacted into
+     * the snapshot.
+     *
+     * @param batch the records to be written
+     * @return true if the batch contained the request to stop
+     */
+    private boolean commit(List<Record> batch) {
+        StringBuilder lines = new StringBuilder();
+        List<Record> changes = new ArrayList<>();
+        boolean compact = false;
+        boolean stop = false;
+
+        for (Record record : batch) {
+            if (record == Record.POISON) {
+                stop = true;
+            } else if (record.path == null) {
+                compact = true;
+            } else {
+                lines.append(record.operation).append(escape(record.path)).append('\n');
+                changes.add(record);
+            }
+        }
+
+        try {
+            if (!changes.isEmpty()) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    journal.write(buffer);
+                }
+                journal.force(false);
+
+                for (Record record : changes) {
+                    if (record.operation == ADD) {
+                        state.add(record.path);
+                    } else {
+                        state.remove(record.path);
+                    }
+                }
+                journalRecords += changes.size();
+            }
+
+            if (compact || journalRecords >= Math.max(MIN_COMPACTION_RECORDS, state.size())) {
+                writeSnapshot();
+            }
+
+            batch.forEach(record -> record.committed.complete(null));
+        } catch (IOException e) {
+            System.err.println("[Error]: Could not persist the protected paths: " + e.getMessage());
+            batch.forEach(record -> record.committed.completeExceptionally(e));
+        }
+
+        return stop;
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(JSON.toJSON(state).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(snapshotPath.toAbsolutePath().getParent());
+
+        // the journal is only emptied once the snapshot holding its records is in place
+        journal.truncate(0);
+        journal.position(0);
+        journal.force(true);
+        journalRecords = 0;
+    }
+
+    /**
+     * Syncs a directory, so that a rename in it survives a crash. Platforms that cannot open directories for
+     * reading, such as Windows, persist renames without it.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory cannot be synced
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException e) {
+            return;
+        }
+
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Applies the complete records of the journal to the loaded state.
+     *
+     * @return the length of the journal up to its last complete record
+     * @throws IOException if the journal cannot be read
+     */
+    private long replayJournal() throws IOException {
+        byte[] content;
+
+        try {
+            content = Files.readAllBytes(journalPath);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+
+        int start = 0;
+        for (int end = 0; end < content.length; end++) {
+            if (content[end] != '\n') {
+                continue;
+            }
+
+            if (end > start) {
+                String path = unescape(new String(content, start + 1, end - start - 1, StandardCharsets.UTF_8));
+
+                if (content[start] == ADD) {
+                    state.add(path);
+                } else if (content[start] == REMOVE) {
+                    state.remove(path);
+                }
+                journalRecords++;
+            }
+
+            start = end + 1;
+        }
+
+        return start;
+    }
+
+    private static String escape(String path) {
+        return path.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+
+        StringBuilder path = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char character = line.charAt(i);
+
+            if (character == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                path.append(escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                path.append(character);
+            }
+        }
+
+        return path.toString();
+    }
+
+    /**
+     * Change waiting to be written by the writer thread. Records without a path request a compaction.
+     */
+    private static class Record {
+        static final Record POISON = new Record((char) 0, null);
+
+        final char operation;
+        final String path;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        Record(char operation, String path) {
+            this.operation = operation;
+            this.path = path;
+        }
+    }
+}
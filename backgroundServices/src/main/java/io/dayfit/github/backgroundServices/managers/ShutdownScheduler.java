@@ -0,0 +1,345 @@
+package io.dayfit.github.backgroundServices.managers;
+
+import io.dayfit.github.backgroundServices.components.ConfigurationReader;
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.CryptoSession;
+import io.dayfit.github.shared.utils.FileResult;
+import io.dayfit.github.shared.utils.FileTreeWalker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Encrypts the protected paths within a time budget, e.g. while the device is shutting down.
+ * <p>
+ * Files are encrypted in parallel, most important first: files left over by the previous run, then sensitive files,
+ * then files modified since the previous run, each class smallest first, so as many important files as possible are
+ * encrypted if the budget runs out or the process is killed. Only the files of these classes are collected and sorted;
+ * all other files are streamed afterward in the order they are walked, a chunk at a time, so the memory needed does
+ * not grow with the size of the protected paths. Every finished file is recorded in the {@link ProgressJournal}, so
+ * the next run skips it. The prioritized files and the files of the last chunk that could not be started in time are
+ * written to a checkpoint, so the next start reports what is left and the next run encrypts them first.
+ * </p>
+ */
+@Component
+public class ShutdownScheduler {
+    static final String CHECKPOINT_FILE = "shutdownCheckpoint.log";
+    static final String STARTED = "# started ";
+    static final String FINISHED = "# finished ";
+    static final String REMAINING = "? ";
+
+    private static final int REPORTED_FILES = 10;
+    private static final int CHUNK_SIZE = 1024;
+
+    private final PathManager pathManager;
+    private final long budgetMillis;
+    private final Set<String> sensitiveExtensions;
+
+    /**
+     * Constructor for ShutdownScheduler.
+     *
+     * @param pathManager the PathManager providing the protected paths and the engine encrypting them
+     * @param configurationReader the reader providing the time budget and the sensitive file extensions
+     */
+    @Autowired
+    public ShutdownScheduler(PathManager pathManager, ConfigurationReader configurationReader) {
+        this.pathManager = pathManager;
+        this.budgetMillis = configurationReader.getShutdownTimeBudget();
+        this.sensitiveExtensions = Arrays.stream(configurationReader.getShutdownPriorityExtensions().split(","))
+                .map(extension -> extension.trim().toLowerCase(Locale.ROOT))
+                .filter(extension -> !extension.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Encrypts the protected paths within the configured time budget.
+     *
+     * @param password the password used for encryption
+     * @param result the result the outcome of every file is recorded into
+     * @return the number of files that could not be started within the budget
+     *
+     * @throws IOException if any of the protected paths does not exist or cannot be listed
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    public long encryptProtectedPaths(String password, BatchResult result) throws IOException, NoSuchAlgorithmException {
+        long startTime = System.nanoTime();
+        long deadline = budgetMillis > 0 ? startTime + TimeUnit.MILLISECONDS.toNanos(budgetMillis) : startTime + Long.MAX_VALUE / 2;
+
+        Checkpoint previous = Checkpoint.load(Path.of(CHECKPOINT_FILE));
+        List<File> roots = pathManager.getProtectedRoots();
+        FileTreeWalker walker = new FileTreeWalker();
+        List<File> remaining = new ArrayList<>();
+        long remainingCount;
+
+        try (PathLockManager.PathLock ignored = pathManager.getLockManager().lock(roots);
+             ProgressJournal.Operation operation = pathManager.beginOperation(true, roots);
+             CheckpointWriter checkpoint = new CheckpointWriter(Path.of(CHECKPOINT_FILE));
+             CryptoSession session = CryptoSession.open(password)) {
+
+            BatchResult journaled = BatchResult.summarizing(fileResult -> {
+                operation.record(fileResult);
+                result.add(fileResult);
+            });
+
+            List<Candidate> prioritized = new ArrayList<>();
+            Set<File> handled = new HashSet<>();
+            long[] others = new long[1];
+
+            walker.walk(roots, (file, attributes) -> {
+                Candidate candidate = new Candidate(file.toFile(), attributes.size(), attributes.lastModifiedTime().toMillis());
+
+                if (!isPrioritized(candidate, previous)) {
+                    others[0]++;
+                } else {
+                    handled.add(candidate.file());
+
+                    if (operation.isCompleted(file, candidate.size(), candidate.modified())) {
+                        result.add(FileResult.skipped(candidate.file(), candidate.size()));
+                    } else {
+                        prioritized.add(candidate);
+                    }
+                }
+            });
+
+            prioritized.sort(Comparator
+                    .comparing((Candidate candidate) -> !previous.remaining().contains(candidate.file().getAbsolutePath()))
+                    .thenComparing(candidate -> !isSensitive(candidate.file()))
+                    .thenComparingLong(Candidate::size)
+                    .thenComparing(Comparator.comparingLong(Candidate::modified).reversed()));
+
+            List<File> ordered = prioritized.stream().map(Candidate::file).toList();
+            remaining.addAll(pathManager.getDirectoryEngine().processInOrder(ordered, true, session, pathManager.getChunkStore(), journaled, deadline));
+
+            long reached = remaining.isEmpty() ? streamOthers(roots, handled, operation, session, journaled, result, remaining, deadline) : 0;
+            remainingCount = remaining.size() + Math.max(others[0] - reached, 0);
+
+            walker.relink(journaled);
+            checkpoint.finish(remaining);
+
+            // an operation running out of budget is left unfinished, so the next run resumes it
+            if (remainingCount == 0) {
+                operation.finish();
+            }
+        }
+
+        if (remainingCount > 0) {
+            System.err.println("[Warning]: Time budget of " + budgetMillis + " ms exhausted, " + remainingCount +
+                    " protected file(s) left unencrypted, they are encrypted on the next run: " + describe(remaining, remainingCount));
+        }
+
+        return remainingCount;
+    }
+
+    /**
+     * Encrypts the files not prioritized in the order they are walked, a chunk at a time, stopping the walk once the
+     * budget has run out.
+     *
+     * @return the number of files not prioritized that have been reached, whether started or left for the next run
+     */
+    private long streamOthers(List<File> roots, Set<File> handled, ProgressJournal.Operation operation,
+                              CryptoSession session, BatchResult journaled, BatchResult result, List<File> remaining,
+                              long deadline) throws IOException {
+        List<File> chunk = new ArrayList<>(CHUNK_SIZE);
+        long[] reached = new long[1];
+
+        try {
+            // the hard links of the protected paths have already been recorded by the first walk
+            new FileTreeWalker().walk(roots, (file, attributes) -> {
+                Candidate candidate = new Candidate(file.toFile(), attributes.size(), attributes.lastModifiedTime().toMillis());
+
+                if (handled.contains(candidate.file())) {
+                    return;
+                }
+
+                reached[0]++;
+
+                if (operation.isCompleted(file, candidate.size(), candidate.modified())) {
+                    result.add(FileResult.skipped(candidate.file(), candidate.size()));
+                    return;
+                }
+
+                chunk.add(candidate.file());
+                if (chunk.size() == CHUNK_SIZE) {
+                    processChunk(chunk, session, journaled, remaining, deadline);
+                }
+            });
+
+            processChunk(chunk, session, journaled, remaining, deadline);
+        } catch (BudgetExhaustedException e) {
+            // the files not reached are counted by the caller
+        }
+
+        return reached[0];
+    }
+
+    private void processChunk(List<File> chunk, CryptoSession session, BatchResult journaled, List<File> remaining, long deadline) throws BudgetExhaustedException {
+        List<File> left = pathManager.getDirectoryEngine().processInOrder(chunk, true, session, pathManager.getChunkStore(), journaled, deadline);
+        chunk.clear();
+
+        if (!left.isEmpty()) {
+            remaining.addAll(left);
+            throw new BudgetExhaustedException();
+        }
+    }
+
+    /**
+     * @return true if the file is left over by the previous run, sensitive, or modified since the previous run started
+     */
+    private boolean isPrioritized(Candidate candidate, Checkpoint previous) {
+        return previous.remaining().contains(candidate.file().getAbsolutePath()) || isSensitive(candidate.file())
+                || (previous.startedAt() > 0 && candidate.modified() > previous.startedAt());
+    }
+
+    /**
+     * Reports the files left unencrypted by the previous run, if any. A run that has been interrupted is reported by
+     * the {@link PathManager}, together with the other interrupted operations.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportPreviousRun() {
+        Checkpoint previous;
+
+        try {
+            previous = Checkpoint.load(Path.of(CHECKPOINT_FILE));
+        } catch (IOException e) {
+            System.err.println("[Warning]: Could not read " + CHECKPOINT_FILE + ": " + e.getMessage());
+            return;
+        }
+
+        if (previous.startedAt() == 0) {
+            return;
+        }
+
+        if (previous.finished() && !previous.remaining().isEmpty()) {
+            System.err.println("[Warning]: The last encryption of the protected paths left " + previous.remaining().size() +
+                    " file(s) unencrypted, run -c to finish it: " + describe(previous.remaining().stream().map(File::new).toList()));
+        }
+    }
+
+    private boolean isSensitive(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+
+        return dot >= 0 && sensitiveExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String describe(List<File> files) {
+        return describe(files, files.size());
+    }
+
+    private static String describe(List<File> files, long count) {
+        String listed = files.stream().limit(REPORTED_FILES).map(File::getPath).collect(Collectors.joining(", "));
+        return count > Math.min(files.size(), REPORTED_FILES) ? listed + ", ..." : listed;
+    }
+
+    /**
+     * File to be encrypted, with the attributes used for prioritizing it.
+     */
+    private record Candidate(File file, long size, long modified) {
+    }
+
+    /**
+     * Stops the walk over the files not prioritized once the budget has run out.
+     */
+    private static class BudgetExhaustedException extends IOException {
+        BudgetExhaustedException() {
+            super("Time budget exhausted");
+        }
+    }
+
+    /**
+     * Content of the checkpoint written by a previous run.
+     *
+     * @param startedAt the time the previous run started at, in milliseconds since the epoch, 0 if there was none
+     * @param finished  true if the previous run finished, false if it was interrupted
+     * @param remaining the absolute paths of the files the previous run could not start within its budget
+     */
+    private record Checkpoint(long startedAt, boolean finished, Set<String> remaining) {
+        static Checkpoint load(Path path) throws IOException {
+            List<String> lines;
+
+            try {
+                lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                return new Checkpoint(0, true, Set.of());
+            }
+
+            long startedAt = 0;
+            boolean finished = false;
+            Set<String> remaining = new LinkedHashSet<>();
+
+            for (String line : lines) {
+                if (line.startsWith(STARTED)) {
+                    startedAt = parseMillis(line.substring(STARTED.length()));
+                } else if (line.startsWith(FINISHED)) {
+                    finished = true;
+                } else if (line.startsWith(REMAINING)) {
+                    remaining.add(line.substring(REMAINING.length()));
+                }
+            }
+
+            return new Checkpoint(startedAt, finished, remaining);
+        }
+
+        private static long parseMillis(String value) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the start of a run and, once it has finished, the files it could not start within its budget.
+     */
+    private static class CheckpointWriter implements AutoCloseable {
+        private final BufferedWriter writer;
+
+        CheckpointWriter(Path path) throws IOException {
+            this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            write(STARTED + System.currentTimeMillis());
+        }
+
+        void finish(List<File> remaining) {
+            for (File file : remaining) {
+                write(REMAINING + file.getAbsolutePath());
+            }
+            write(FINISHED + System.currentTimeMillis());
+        }
+
+        private synchronized void write(String line) {
+            try {
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("[Warning]: Could not write " + CHECKPOINT_FILE + ": " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -4,6 +4,11 @@ import io.dayfit.github.backgroundServices.cli.CLIHandler;
 import io.dayfit.github.backgroundServices.managers.PathManager;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Service class for executing CLI commands.
  */
@@ -45,4 +50,39 @@ public class CLICommandService
 
         handler.processArguments(command.split(" "), "");
     }
+
+    /**
+     * Executes a batch of CLI commands in order, sharing a single password.
+     * A failing command does not stop the batch.
+     *
+     * @param commands the CLI commands to execute, each one being a single argument
+     * @param password the password to use for encryption and decryption
+     * @return the result of every command, in the order of the commands
+     * @throws IllegalStateException if the pathManager is not set
+     */
+    public List<Map<String, String>> executeCommands(List<String> commands, String password) throws IllegalStateException {
+        if(handler == null) {
+            throw new IllegalStateException("pathManager is not set");
+        }
+
+        List<Map<String, String>> results = new ArrayList<>(commands.size());
+
+        for (String command : commands) {
+            Map<String, String> result = new LinkedHashMap<>();
+            result.put("command", command);
+
+            try {
+                handler.processArgument(command, password == null ? "" : password);
+                result.put("status", "success");
+                result.put("message", "Command executed successfully.");
+            } catch (Exception e) {
+                result.put("status", "error");
+                result.put("message", e.getMessage());
+            }
+
+            results.add(result);
+        }
+
+        return results;
+    }
 }
\ No newline at end of file
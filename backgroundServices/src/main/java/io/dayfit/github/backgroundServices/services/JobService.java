@@ -0,0 +1,258 @@
+package io.dayfit.github.backgroundServices.services;
+
+import io.dayfit.github.backgroundServices.components.ConfigurationReader;
+import io.dayfit.github.backgroundServices.jobs.Job;
+import io.dayfit.github.backgroundServices.managers.PathManager;
+import io.dayfit.github.backgroundServices.managers.ProtectedPathWatcher;
+import io.dayfit.github.backgroundServices.managers.ShutdownManager;
+import io.dayfit.github.backgroundServices.managers.ShutdownScheduler;
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.ContainerVerifier;
+import io.dayfit.github.shared.utils.CryptoSession;
+import io.dayfit.github.shared.utils.FileTreeWalker;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service running encryption, decryption and verification commands asynchronously.
+ * <p>
+ * Jobs are executed by a bounded pool of workers, and submissions exceeding the capacity of its queue are rejected
+ * instead of piling up in memory. Every job still parallelizes its files through the directory engine.
+ * </p>
+ */
+@Service
+public class JobService {
+    private final PathManager pathManager;
+    private final ShutdownManager shutdownManager;
+    private final ProtectedPathWatcher protectedPathWatcher;
+    private final ShutdownScheduler shutdownScheduler;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService dispatcher;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final int maxRetained;
+
+    /**
+     * Constructor for JobService.
+     *
+     * @param pathManager the PathManager used for processing the protected paths
+     * @param shutdownManager the ShutdownManager used for shutting down the application after the -c command
+     * @param protectedPathWatcher the watcher armed by decrypting the protected paths
+     * @param shutdownScheduler the scheduler encrypting the protected paths within a time budget on -c
+     * @param configurationReader the ConfigurationReader providing the limits of the job pool
+     */
+    @Autowired
+    public JobService(PathManager pathManager, ShutdownManager shutdownManager, ProtectedPathWatcher protectedPathWatcher,
+                      ShutdownScheduler shutdownScheduler, ConfigurationReader configurationReader) {
+        this.pathManager = pathManager;
+        this.shutdownManager = shutdownManager;
+        this.protectedPathWatcher = protectedPathWatcher;
+        this.shutdownScheduler = shutdownScheduler;
+        this.maxRetained = Math.max(configurationReader.getJobsMaxRetained(), 1);
+
+        int workers = Math.max(configurationReader.getJobsMaxConcurrent(), 1);
+        AtomicInteger counter = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(configurationReader.getJobsMaxQueued(), 1)),
+                runnable -> new Thread(runnable, "alohomora-job-" + counter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "alohomora-job-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits a command to be executed in the background.
+     *
+     * @param command the command to execute, one of -e=[path], -d=[path], -v=[path], -p, -c or -v
+     * @param password the password used for encryption or decryption
+     * @return the queued job
+     *
+     * @throws IllegalArgumentException if the command is not supported or its path does not exist
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public Job submit(String command, String password) throws IllegalArgumentException, RejectedExecutionException {
+        String argument = command == null ? "" : command.trim();
+        String operation = argument.length() > 3 ? argument.substring(0, 3) : argument;
+
+        boolean encryption = false;
+        boolean verification = false;
+        File target = null;
+
+        switch (operation) {
+            case "-e=", "-d=", "-v=" -> {
+                encryption = operation.equals("-e=");
+                verification = operation.equals("-v=");
+                target = new File(argument.substring(3).replaceAll("\"", "").trim());
+
+                if (!target.exists()) {
+                    throw new IllegalArgumentException("File not found: " + target.getPath());
+                }
+            }
+            case "-c" -> encryption = true;
+            case "-p" -> encryption = false;
+            case "-v" -> verification = true;
+            default -> throw new IllegalArgumentException("Unsupported job command: " + argument);
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), argument, dispatcher);
+        File file = target;
+        boolean encrypting = encryption;
+        boolean verifying = verification;
+
+        evictFinishedJobs();
+        jobs.put(job.getId(), job);
+
+        try {
+            executor.execute(() -> {
+                if (verifying) {
+                    verify(job, file, password == null ? "" : password);
+                } else {
+                    run(job, file, encrypting, password == null ? "" : password);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new RejectedExecutionException("Too many jobs are queued, try again later");
+        }
+
+        return job;
+    }
+
+    /**
+     * Retrieves a job by its identifier.
+     *
+     * @param id the identifier of the job
+     * @return the job, or an empty optional if no such job exists
+     */
+    public Optional<Job> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Stops accepting new jobs and waits for the running ones to finish.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("[Warning]: Some jobs did not finish before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        dispatcher.shutdown();
+    }
+
+    private void run(Job job, File target, boolean encryption, String password) {
+        try {
+            if (target == null && encryption) {
+                protectedPathWatcher.disarm();
+            }
+
+            List<File> roots = target != null ? List.of(target) : pathManager.getProtectedRoots();
+            FileTreeWalker.Totals totals = FileTreeWalker.scan(roots);
+            job.start(totals.files(), totals.bytes());
+
+            BatchResult result = BatchResult.summarizing(job::record);
+            long remaining = 0;
+
+            if (target == null && encryption) {
+                remaining = shutdownScheduler.encryptProtectedPaths(password, result);
+            } else {
+                try (CryptoSession session = CryptoSession.open(password)) {
+                    pathManager.process(roots, encryption, session, result);
+                }
+            }
+
+            if (remaining == 0) {
+                job.complete(result);
+            } else {
+                // files not started within the time budget are still plaintext
+                job.completeWithErrors(result + ", " + remaining + " file(s) left for the next run");
+            }
+
+            if (target == null && !encryption) {
+                try {
+                    protectedPathWatcher.arm(password, result);
+                } catch (IOException e) {
+                    System.err.println("[Warning]: Could not watch the protected paths: " + e.getMessage());
+                }
+            }
+
+            if (target == null && encryption) {
+                System.out.println("[Success]: Shutting down application...");
+                shutdownManager.shutdown();
+            }
+        } catch (FileNotFoundException e) {
+            job.fail(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("[Error]: Job " + job.getId() + " failed: " + e.getMessage());
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Verifies the target, or the protected paths if there is none, reading the files only.
+     */
+    private void verify(Job job, File target, String password) {
+        try {
+            List<File> roots = target != null ? List.of(target) : pathManager.getProtectedRoots();
+            FileTreeWalker.Totals totals = FileTreeWalker.scan(roots);
+            job.start(totals.files(), totals.bytes());
+
+            long startTime = System.nanoTime();
+
+            try (CryptoSession session = CryptoSession.open(password)) {
+                ContainerVerifier verifier = new ContainerVerifier(session);
+                BatchResult result = pathManager.getDirectoryEngine().verify(roots, verifier, BatchResult.summarizing(job::record));
+                job.complete(result, verifier.describe(result, System.nanoTime() - startTime));
+            }
+        } catch (FileNotFoundException e) {
+            job.fail(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("[Error]: Job " + job.getId() + " failed: " + e.getMessage());
+            job.fail(e.getMessage());
+        }
+    }
+
+    private void evictFinishedJobs() {
+        long finished = jobs.values().stream().filter(Job::isFinished).count();
+        if (finished < maxRetained) {
+            return;
+        }
+
+        List<Job> oldest = jobs.values().stream()
+                .filter(Job::isFinished)
+                .sorted((a, b) -> a.getFinishedAt().compareTo(b.getFinishedAt()))
+                .toList();
+
+        Iterator<Job> iterator = oldest.iterator();
+        for (long i = finished; i >= maxRetained && iterator.hasNext(); i--) {
+            jobs.remove(iterator.next().getId());
+        }
+    }
+}
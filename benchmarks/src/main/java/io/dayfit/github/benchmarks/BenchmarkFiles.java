@@ -0,0 +1,60 @@
+package io.dayfit.github.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Helpers creating and deleting the files and trees used by the benchmarks.
+ */
+final class BenchmarkFiles {
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Writes a file of the given size filled with pseudo-random, incompressible data.
+     *
+     * @param path the file to be written
+     * @param size the size of the file in bytes
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeRandomFile(Path path, long size) throws IOException {
+        Random random = new Random(size);
+        byte[] buffer = new byte[(int) Math.min(WRITE_BUFFER_SIZE, Math.max(size, 1))];
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            long remaining = size;
+
+            while (remaining > 0) {
+                random.nextBytes(buffer);
+                int length = (int) Math.min(buffer.length, remaining);
+                outputStream.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    /**
+     * Deletes a file or a directory with all its content, ignoring missing paths.
+     *
+     * @param path the file or directory to be deleted
+     * @throws IOException if an I/O error occurs
+     */
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path entry : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.dayfit.github.benchmarks;
+
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.Encryptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Encryptor#encryptDirectory} over generated trees of different shapes.
+ * The tree is decrypted again before every invocation, outside of the measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirectoryBenchmark {
+    private static final String PASSWORD = "benchmark-password";
+
+    /**
+     * DEEP: 200 nested directories with 5 files of 16 KB each.
+     * WIDE: 1,000 sibling directories with 5 files of 16 KB each.
+     * TINY_FILES: 20,000 files of 1 KB in a single directory.
+     */
+    @Param({"DEEP", "WIDE", "TINY_FILES"})
+    public String shape;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("alohomora-directory-benchmark");
+
+        switch (shape) {
+            case "DEEP" -> {
+                Path directory = root;
+                for (int depth = 0; depth < 200; depth++) {
+                    directory = Files.createDirectory(directory.resolve("d" + depth));
+                    writeFiles(directory, 5, 16 * 1024);
+                }
+            }
+            case "WIDE" -> {
+                for (int index = 0; index < 1_000; index++) {
+                    writeFiles(Files.createDirectory(root.resolve("d" + index)), 5, 16 * 1024);
+                }
+            }
+            case "TINY_FILES" -> writeFiles(root, 20_000, 1024);
+            default -> throw new IllegalArgumentException("Unknown tree shape: " + shape);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void decryptTree() {
+        Encryptor.decryptDirectory(root.toFile(), PASSWORD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public BatchResult encryptDirectory() {
+        return Encryptor.encryptDirectory(root.toFile(), PASSWORD);
+    }
+
+    private static void writeFiles(Path directory, int count, int size) throws Exception {
+        for (int index = 0; index < count; index++) {
+            BenchmarkFiles.writeRandomFile(directory.resolve("f" + index + ".bin"), size);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.dayfit.github.benchmarks;
+
+import io.dayfit.github.shared.utils.CryptoSession;
+import io.dayfit.github.shared.utils.Encryptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encryption and decryption of single files from 1 KB up to 1 GB.
+ * Each operation writes into a separate output file, so the input stays the same across invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EncryptorBenchmark {
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long fileSize;
+
+    private Path directory;
+    private Path plaintextFile;
+    private Path encryptedFile;
+    private Path outputFile;
+    private CryptoSession session;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("alohomora-encryptor-benchmark");
+        plaintextFile = directory.resolve("plaintext.bin");
+        encryptedFile = directory.resolve("encrypted.bin");
+        outputFile = directory.resolve("output.bin");
+        session = CryptoSession.open("benchmark-password");
+
+        BenchmarkFiles.writeRandomFile(plaintextFile, fileSize);
+        Encryptor.encrypt(plaintextFile.toFile(), encryptedFile.toFile(), session);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        session.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void encrypt() throws Exception {
+        Encryptor.encrypt(plaintextFile.toFile(), outputFile.toFile(), session);
+    }
+
+    @Benchmark
+    public void decrypt() throws Exception {
+        Encryptor.decrypt(encryptedFile.toFile(), outputFile.toFile(), session);
+    }
+}
@@ -0,0 +1,25 @@
+package io.dayfit.github.benchmarks;
+
+import io.dayfit.github.shared.utils.CryptoSession;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures deriving the key from a password, which happens once per crypto session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KeyDerivationBenchmark {
+
+    @Benchmark
+    public Object deriveKey() throws Exception {
+        try (CryptoSession session = CryptoSession.open("benchmark-password")) {
+            return session.getKey().getAlgorithm();
+        }
+    }
+}
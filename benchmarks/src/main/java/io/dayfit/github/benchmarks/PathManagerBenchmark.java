@@ -0,0 +1,79 @@
+package io.dayfit.github.benchmarks;
+
+import io.dayfit.github.backgroundServices.managers.PathManager;
+import io.dayfit.github.shared.JSON;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures persisting, loading and querying 10^5 protected paths.
+ * The benchmark runs in the build directory, where the protected paths snapshot and journal are written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathManagerBenchmark {
+    private static final int PATH_COUNT = 100_000;
+    private static final Path PROTECTED_PATHS_FILE = Path.of("protectedPaths.json");
+    private static final Path PROTECTED_PATHS_JOURNAL = Path.of("protectedPaths.journal");
+    private static final Path NESTED_FILE = Path.of("/protected/dir" + (PATH_COUNT / 2) + "/file" + (PATH_COUNT / 2) + "/a/b/c.txt");
+
+    private PathManager pathManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Set<String> paths = IntStream.range(0, PATH_COUNT)
+                .mapToObj(index -> "/protected/dir" + index + "/file" + index)
+                .collect(Collectors.toSet());
+
+        Files.deleteIfExists(PROTECTED_PATHS_FILE);
+        Files.deleteIfExists(PROTECTED_PATHS_JOURNAL);
+        Files.writeString(PROTECTED_PATHS_FILE, JSON.toJSON(paths));
+        pathManager = new PathManager(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pathManager.close();
+        Files.deleteIfExists(PROTECTED_PATHS_FILE);
+        Files.deleteIfExists(PROTECTED_PATHS_JOURNAL);
+    }
+
+    /**
+     * Compacts the journal into a new snapshot of all protected paths.
+     */
+    @Benchmark
+    public void saveProtectedPaths() throws Exception {
+        pathManager.saveProtectedPaths();
+    }
+
+    /**
+     * Adds and removes a protected path, each change being appended to the journal and synced before returning.
+     */
+    @Benchmark
+    public void addAndRemoveProtectedPath() throws Exception {
+        pathManager.addProtectedPath("/protected/added");
+        pathManager.removeProtectedPath("/protected/added");
+    }
+
+    @Benchmark
+    public PathManager loadProtectedPaths() {
+        PathManager loaded = new PathManager(true);
+        loaded.close();
+        return loaded;
+    }
+
+    @Benchmark
+    public boolean isProtected() {
+        return pathManager.isProtected(NESTED_FILE);
+    }
+}
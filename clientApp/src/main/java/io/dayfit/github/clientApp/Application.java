@@ -1,25 +1,35 @@
 package io.dayfit.github.clientApp;
 
 import io.dayfit.github.shared.JSON;
+import io.dayfit.github.shared.ReadyFile;
+import io.dayfit.github.shared.SocketProtocol;
+import io.dayfit.github.shared.utils.Compression;
+import io.dayfit.github.shared.utils.Encryptor;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main client application class for Alohomora that handles interaction
  * with background services via REST API.
  * <p>
  * This application is responsible for starting background services,
- * sending commands and receiving responses.
+ * sending commands and receiving responses. Encryption and decryption
+ * of explicit paths is executed directly in the client when background
+ * services are not running, instead of starting them.
  * </p>
  */
 public class Application {
@@ -27,10 +37,27 @@ public class Application {
     final static String APPLICATION_VERSION = getProperty("application.version");
     final static String SERVER_PORT = getProperty("server.port");
     final static int MAX_TIME_WAIT = Integer.parseInt(getProperty("max.wait.time.backgroundServices"));
+    final static boolean DIRECT_MODE_ENABLED = Boolean.parseBoolean(getProperty("direct.mode.enabled"));
+    final static Compression DIRECT_MODE_COMPRESSION = Compression.valueOf(getProperty("encryption.compression").trim().toUpperCase());
 
     final static PasswordManager PASSWORD_MANAGER = new PasswordManager();
     final static String URL_ADDRESS = "http://localhost:"+SERVER_PORT;
 
+    /**
+     * Single client for all requests, so the connection to background services is kept alive between them.
+     */
+    final static HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    final static Path READY_FILE = ReadyFile.resolvePath(getProperty("ready.file.path"));
+
+    /**
+     * Faster transport used instead of HTTP whenever background services expose their socket.
+     */
+    final static SocketTransport SOCKET_TRANSPORT = new SocketTransport(SocketProtocol.resolveSocketPath(getProperty("cli.socket.path")));
+
     /**
      * Main application method that processes command line arguments
      * and communicates with the background service.
@@ -45,72 +72,121 @@ public class Application {
         }
 
         try {
-            handleStartingBackgroundServices();
+            List<String> commands = new ArrayList<>();
+            boolean exiting = false;
 
             for (String arg : args) {
-                sendCliToBackgroundService(arg);
+                commands.add(arg);
 
                 if (arg.contains("-c")) {
-                    System.out.println("Exiting...");
-                    System.exit(0);
+                    exiting = true;
+                    break;
                 }
             }
+
+            if (DIRECT_MODE_ENABLED && DirectExecutor.supportsAll(commands) && isIncorrectPingResponse()) {
+                Encryptor.setCompression(DIRECT_MODE_COMPRESSION);
+                printResults(DirectExecutor.execute(commands, PASSWORD_MANAGER.getPassword()));
+                return;
+            }
+
+            long coldStartedAt = handleStartingBackgroundServices();
+            sendCliToBackgroundService(commands);
+
+            if (coldStartedAt != 0) {
+                System.out.println("Cold start to first command: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - coldStartedAt) + " ms");
+            }
+
+            if (exiting) {
+                System.out.println("Exiting...");
+                System.exit(0);
+            }
         } catch (InterruptedException | IOException e) {
             System.err.println("Error during starting background services " + e.getMessage());
         }
     }
 
     /**
-     * Sends a command to the background service and optionally waits for a response.
-     * Handles authentication for secure commands (-d, -e, -c, -p).
-     * 
-     * @param command The command to send to the background service
+     * Sends all commands to the background service in a single request and prints the result of every command.
+     * Handles authentication for secure commands (-d, -e, -c, -p), asking for the password at most once per batch.
+     *
+     * @param commands The commands to send to the background service
      */
-    private static void sendCliToBackgroundService(String command) throws IOException
+    private static void sendCliToBackgroundService(List<String> commands) throws IOException, InterruptedException
     {
-        URL url = new URL(URL_ADDRESS+"/cli");
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        String password = commands.stream().anyMatch(Application::requiresPassword) ? PASSWORD_MANAGER.getPassword() : null;
 
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setDoOutput(true);
+        if (SOCKET_TRANSPORT.isAvailable()) {
+            try {
+                printResults(SOCKET_TRANSPORT.sendBatch(commands, password));
+                return;
+            } catch (IOException e) {
+                System.err.println("Could not use the background services socket, falling back to HTTP: " + e.getMessage());
+            }
+        }
 
-        OutputStream os = connection.getOutputStream();
-        String requestBody = "command=" + URLEncoder.encode(command, StandardCharsets.UTF_8);
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("commands", commands);
 
-        if (command.contains("-d") || command.contains("-e") || command.contains("-c") || command.contains("-p")) {
-            String password = PASSWORD_MANAGER.getPassword();
-            requestBody += "&password=" + password;
+        if (password != null) {
+            requestBody.put("password", password);
         }
 
-        os.write(requestBody.getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(URL_ADDRESS + "/cli/batch"))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(JSON.toJSON(requestBody)))
+                .build();
 
-        os.flush();
-        os.close();
+        HttpResponse<String> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+        HashMap<?, ?> responseMessage = JSON.fromJSON(response.body(), HashMap.class);
 
-        int responseCode = connection.getResponseCode();
-        InputStream is = responseCode < 400 ? connection.getInputStream() : connection.getErrorStream();
-
-        String response = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-        HashMap<?, ?> responseMessage = JSON.fromJSON(response, HashMap.class);
+        if (responseMessage == null) {
+            System.err.println("Error: Response received is null");
+            return;
+        }
 
-        if (responseMessage != null) {
+        if (!(responseMessage.get("results") instanceof List<?> results)) {
             System.out.println(responseMessage.get("status") + " " + responseMessage.get("message"));
-        } else {
-            System.err.println("Error: Response received is null");
+            return;
         }
-        connection.disconnect();
+
+        printResults(results);
+    }
+
+    /**
+     * Prints the result of every command of a batch.
+     *
+     * @param results The results returned by background services
+     */
+    private static void printResults(List<?> results) {
+        for (Object entry : results) {
+            if (entry instanceof Map<?, ?> result) {
+                System.out.println(result.get("status") + " " + result.get("command") + ": " + result.get("message"));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a command needs the password.
+     *
+     * @param command The command to check
+     * @return true if the command encrypts, decrypts or verifies files
+     */
+    private static boolean requiresPassword(String command) {
+        return command.contains("-d") || command.contains("-e") || command.contains("-c") || command.contains("-p")
+                || command.startsWith("-la=") || command.startsWith("-xa=") || command.equals("-v") || command.startsWith("-v=");
     }
 
     /**
      * Handles the initialization of background services.
      * Checks if the service is running and starts it if necessary.
      * 
+     * @return the System.nanoTime() at which background services have been started, or 0 if they were already running
      * @throws InterruptedException If the thread is interrupted while waiting for services
      * @throws IOException If there's an error starting the background service process
      */
-    private static void handleStartingBackgroundServices() throws InterruptedException, IOException {
+    private static long handleStartingBackgroundServices() throws InterruptedException, IOException {
         String alohomoraServicesPath = "Alohomora-background-"+APPLICATION_VERSION+".jar";
 
         if (isIncorrectPingResponse()) {
@@ -121,14 +197,49 @@ public class Application {
                 System.exit(1);
             }
 
+            long startedAt = System.nanoTime();
             ProcessBuilder processBuilder = new ProcessBuilder("java", "-jar", alohomoraServicesPath);
             processBuilder.inheritIO();
-            processBuilder.start();
+            Process process = processBuilder.start();
 
-            awaitForBackgroundServices();
-        } else {
-            System.out.println("Background services are up and running");
+            awaitForBackgroundServices(process, startedAt);
+            return startedAt;
         }
+
+        System.out.println("Background services are up and running");
+        return 0;
+    }
+
+    /**
+     * Waits for background services to announce they are ready through their ready file.
+     * Falls back to polling the ping endpoint if the ready file cannot be watched.
+     * Times out after MAX_TIME_WAIT milliseconds.
+     * 
+     * @param process The process of the started background services
+     * @param startedAt The System.nanoTime() at which the process has been started
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    private static void awaitForBackgroundServices(Process process, long startedAt) throws InterruptedException {
+        Map<?, ?> ready;
+
+        try {
+            ready = ReadyFile.await(READY_FILE, process.pid(), MAX_TIME_WAIT, process::isAlive);
+        } catch (IOException e) {
+            System.err.println("Could not watch " + READY_FILE + ", polling background services instead: " + e.getMessage());
+            pollForBackgroundServices();
+            return;
+        }
+
+        if (ready == null) {
+            System.err.println(process.isAlive() ?
+                    "Could not connect to background services. Tried to connect longer than time waiting was." :
+                    "Background services exited during startup with code " + process.exitValue());
+            System.exit(1);
+        }
+
+        System.out.println("Background services are up and running (ready after " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms, daemon startup " +
+                ready.get(ReadyFile.STARTUP_MILLIS) + " ms)");
     }
 
     /**
@@ -138,7 +249,7 @@ public class Application {
      * 
      * @throws InterruptedException If the thread is interrupted while waiting
      */
-    private static void awaitForBackgroundServices() throws InterruptedException {
+    private static void pollForBackgroundServices() throws InterruptedException {
         int timeWaited = 0;
         while (isIncorrectPingResponse()) {
             if (timeWaited > MAX_TIME_WAIT) {
@@ -160,21 +271,27 @@ public class Application {
      *         false if ping response matches expected response
      */
     private static boolean isIncorrectPingResponse() {
-        try {
-            URL pingEndpoint = new URL(URL_ADDRESS + "/ping");
-            HttpURLConnection connection = (HttpURLConnection) pingEndpoint.openConnection();
-
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(5000);
+        if (SOCKET_TRANSPORT.isAvailable()) {
+            try {
+                return !SOCKET_TRANSPORT.ping().equals(SERVER_PING_RESPONSE);
+            } catch (IOException ignored) {
+                // stale socket file, try HTTP instead
+            }
+        }
 
-            connection.connect();
-            InputStream is = connection.getInputStream();
-            String pingResponse = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-            connection.disconnect();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(URL_ADDRESS + "/ping"))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET()
+                    .build();
 
-            return !pingResponse.equals(SERVER_PING_RESPONSE);
+            HttpResponse<String> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+            return !response.body().equals(SERVER_PING_RESPONSE);
         } catch (IOException ex) {
             return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return true;
         }
     }
 
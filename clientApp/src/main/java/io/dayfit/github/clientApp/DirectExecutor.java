@@ -0,0 +1,122 @@
+package io.dayfit.github.clientApp;
+
+import io.dayfit.github.shared.utils.BatchResult;
+import io.dayfit.github.shared.utils.ContainerVerifier;
+import io.dayfit.github.shared.utils.CryptoSession;
+import io.dayfit.github.shared.utils.DirectoryEngine;
+import io.dayfit.github.shared.utils.Encryptor;
+import io.dayfit.github.shared.utils.PackCommand;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes encryption and decryption commands inside the client JVM, so one-shot commands do not have to wait
+ * for background services to start.
+ * <p>
+ * Only commands working on explicit paths are supported. Everything relying on the state of background services,
+ * such as the protected paths list, still goes through them.
+ * </p>
+ */
+public class DirectExecutor {
+    private static final List<String> SUPPORTED_ARGUMENTS = List.of("-e=", "-d=", "-ea=", "-da=", "-la=", "-xa=", "-v=");
+
+    /**
+     * Checks whether all commands can be executed without background services.
+     *
+     * @param commands the commands to check
+     * @return true if every command is supported by the direct executor
+     */
+    public static boolean supportsAll(List<String> commands) {
+        return !commands.isEmpty() && commands.stream().allMatch(command ->
+                SUPPORTED_ARGUMENTS.stream().anyMatch(command::startsWith));
+    }
+
+    /**
+     * Executes the commands in order, sharing a single crypto session. A failing command does not stop the rest.
+     *
+     * @param commands the commands to execute
+     * @param password the password used for encryption and decryption
+     * @return the status, command and message of every command, in the order of the commands
+     */
+    public static List<Map<String, String>> execute(List<String> commands, String password) {
+        List<Map<String, String>> results = new ArrayList<>(commands.size());
+
+        try (CryptoSession session = CryptoSession.open(password == null ? "" : password)) {
+            for (String command : commands) {
+                Map<String, String> result = new LinkedHashMap<>();
+                result.put("command", command);
+
+                try {
+                    result.put("message", executeCommand(command, session));
+                    result.put("status", "success");
+                } catch (Exception e) {
+                    result.put("message", e.getMessage());
+                    result.put("status", "error");
+                }
+
+                results.add(result);
+            }
+        } catch (Exception e) {
+            for (String command : commands.subList(results.size(), commands.size())) {
+                Map<String, String> result = new LinkedHashMap<>();
+                result.put("command", command);
+                result.put("status", "error");
+                result.put("message", e.getMessage());
+                results.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    private static String executeCommand(String command, CryptoSession session) throws Exception {
+        if (command.length() > 3 && command.charAt(3) == '=') {
+            return PackCommand.parse(command.substring(0, 4), command.substring(4)).execute(session);
+        }
+
+        if (command.startsWith("-v=")) {
+            File target = ContainerVerifier.parseTarget(command.substring(3));
+            return ContainerVerifier.verifyAll(DirectoryEngine.common(), List.of(target), target.getPath(), session);
+        }
+
+        boolean encryption = command.startsWith("-e=");
+        String operation = encryption ? "encrypted" : "decrypted";
+        String path = command.substring(3).replaceAll("\"", "").trim();
+
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Path cannot be empty");
+        }
+
+        File target = new File(path);
+        if (!target.exists()) {
+            throw new FileNotFoundException("File not found: " + path);
+        }
+
+        if (target.isDirectory()) {
+            BatchResult result = DirectoryEngine.common().process(List.of(target), encryption, session);
+
+            if (!result.isSuccessful()) {
+                throw new IllegalStateException("Some files could not be " + operation + " (" + result + "): " + result.getFailures());
+            }
+
+            return "Directory " + path + " successfully " + operation + " (" + result + ")";
+        }
+
+        if (Encryptor.isInTargetState(target, encryption, session)) {
+            return "File " + path + " is already " + operation + ", skipped";
+        }
+
+        if (encryption) {
+            Encryptor.encrypt(target, target, session);
+        } else {
+            Encryptor.decrypt(target, target, session);
+        }
+
+        return "File " + path + " successfully " + operation;
+    }
+}
@@ -0,0 +1,181 @@
+package io.dayfit.github.clientApp;
+
+import io.dayfit.github.shared.RuntimeDirectory;
+import io.dayfit.github.shared.SocketProtocol;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends commands to background services over their Unix domain socket, keeping a single connection open
+ * for the lifetime of the client.
+ * <p>
+ * As requests carry the password, the socket is only used while it and its directory are private to the current
+ * user, and the connection is closed if the peer is run by another user, so the client falls back to HTTP.
+ * </p>
+ */
+public class SocketTransport {
+    private final Path socketPath;
+    private SocketChannel channel;
+    private boolean warned;
+
+    /**
+     * Creates a transport for the given socket file. No connection is opened until the first request.
+     *
+     * @param socketPath the location of the socket file
+     */
+    public SocketTransport(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Checks whether background services are listening on the socket.
+     *
+     * @return true if the socket file exists and it can be trusted
+     */
+    public boolean isAvailable() {
+        if (!Files.exists(socketPath)) {
+            return false;
+        }
+
+        if (RuntimeDirectory.isPrivate(socketPath)) {
+            return true;
+        }
+
+        if (!warned) {
+            System.err.println("Not using the background services socket " + socketPath + ", it or its directory is accessible by other users");
+            warned = true;
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the ping response of background services.
+     *
+     * @return the ping response
+     * @throws IOException if the socket cannot be reached or the response is malformed
+     */
+    public String ping() throws IOException {
+        ByteBuffer response = exchange(SocketProtocol.newPayload(SocketProtocol.TYPE_PING));
+        SocketProtocol.getByte(response);
+        return SocketProtocol.getString(response);
+    }
+
+    /**
+     * Executes a batch of commands.
+     *
+     * @param commands the commands to execute
+     * @param password the password shared by all commands, may be null
+     * @return the status, command and message of every command, in the order of the commands
+     * @throws IOException if the socket cannot be reached or the response is malformed
+     */
+    public List<Map<String, String>> sendBatch(List<String> commands, String password) throws IOException {
+        ByteBuffer request = SocketProtocol.newPayload(SocketProtocol.TYPE_BATCH);
+        request = SocketProtocol.putString(request, password);
+        request = SocketProtocol.putInt(request, commands.size());
+
+        for (String command : commands) {
+            request = SocketProtocol.putString(request, command);
+        }
+
+        ByteBuffer response = exchange(request);
+        SocketProtocol.getByte(response);
+
+        int count = SocketProtocol.getInt(response);
+        if (count < 0 || count > response.remaining()) {
+            throw new ProtocolException("Invalid result count " + count);
+        }
+
+        List<Map<String, String>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, String> result = new LinkedHashMap<>();
+
+            result.put("status", SocketProtocol.getByte(response) == SocketProtocol.STATUS_SUCCESS ? "success" : "error");
+            result.put("command", SocketProtocol.getString(response));
+            result.put("message", SocketProtocol.getString(response));
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    /**
+     * Closes the connection, if any.
+     */
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+
+        channel = null;
+    }
+
+    private ByteBuffer exchange(ByteBuffer request) throws IOException {
+        if (channel == null) {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socketPath));
+                SocketProtocol.checkPeer(channel);
+            } catch (IOException e) {
+                close();
+                throw e;
+            } catch (SecurityException e) {
+                close();
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        try {
+            try {
+                SocketProtocol.writeFrame(channel, request);
+            } catch (IOException e) {
+                // a refused connection is closed right after the busy response, possibly before the request is written
+                checkBusy(readPendingFrame());
+                throw e;
+            }
+
+            ByteBuffer response = SocketProtocol.readFrame(channel);
+
+            if (response == null) {
+                throw new ProtocolException("Background services closed the connection");
+            }
+
+            checkBusy(response);
+            return response;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer readPendingFrame() {
+        try {
+            return SocketProtocol.readFrame(channel);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void checkBusy(ByteBuffer response) throws IOException {
+        if (response != null && response.hasRemaining() && response.get(response.position()) == SocketProtocol.STATUS_BUSY) {
+            SocketProtocol.getByte(response);
+            throw new IOException("Background services are busy: " + SocketProtocol.getString(response));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.dayfit.github.shared;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * File announcing that background services are ready to accept commands.
+ * <p>
+ * Background services write it atomically once they are fully started, and remove it on shutdown.
+ * It holds the process id of the daemon, so clients can tell it apart from a file left behind by a crashed one.
+ * </p>
+ */
+public final class ReadyFile {
+    public static final String PID = "pid";
+    public static final String STARTUP_MILLIS = "startupMillis";
+
+    private static final long LIVENESS_CHECK_MILLIS = 250;
+
+    private ReadyFile() {
+    }
+
+    /**
+     * Resolves the location of the ready file.
+     *
+     * @param configuredPath the configured location, null or blank meaning the default one
+     * @return the configured location, or a file in the {@link RuntimeDirectory}
+     */
+    public static Path resolvePath(String configuredPath) {
+        if (configuredPath != null && !configuredPath.isBlank()) {
+            return Path.of(configuredPath.trim());
+        }
+
+        return RuntimeDirectory.resolve().resolve("ready");
+    }
+
+    /**
+     * Writes the ready file atomically, so readers never see it partially written. Its directory is created if
+     * needed, and must be private to the current user.
+     *
+     * @param path    the location of the ready file
+     * @param content the content of the ready file, including at least its {@link #PID}
+     * @throws IOException if an I/O error occurs, or the directory is accessible by other users
+     */
+    public static void write(Path path, Map<String, Object> content) throws IOException {
+        RuntimeDirectory.create(path.toAbsolutePath().getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, JSON.toJSON(content));
+
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the ready file.
+     *
+     * @param path the location of the ready file
+     * @return the content of the ready file, or null if it does not exist, cannot be read or is not
+     *         {@link RuntimeDirectory#isPrivate(Path) private} to the current user
+     */
+    public static Map<?, ?> read(Path path) {
+        if (!Files.exists(path) || !RuntimeDirectory.isPrivate(path)) {
+            return null;
+        }
+
+        try {
+            return JSON.fromJSON(Files.readString(path), HashMap.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Blocks until the given process announces it is ready. The parent directory is watched for changes,
+     * so the caller is woken up as soon as the file is written instead of polling for it.
+     *
+     * @param path      the location of the ready file
+     * @param pid       the process id of the daemon being waited for
+     * @param timeout   the maximum time to wait, in milliseconds
+     * @param isRunning tells whether the daemon is still running, so waiting stops early if it exits
+     * @return the content of the ready file, or null if the daemon did not become ready in time
+     * @throws IOException          if the parent directory cannot be created or watched, or is accessible by other users
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public static Map<?, ?> await(Path path, long pid, long timeout, BooleanSupplier isRunning) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Path directory = path.toAbsolutePath().getParent();
+        RuntimeDirectory.create(directory);
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            while (true) {
+                Map<?, ?> content = read(path);
+                if (content != null && content.get(PID) instanceof Number number && number.longValue() == pid) {
+                    return content;
+                }
+
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0 || !isRunning.getAsBoolean()) {
+                    return null;
+                }
+
+                WatchKey key = watchService.poll(Math.min(remaining, LIVENESS_CHECK_MILLIS), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.dayfit.github.shared;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+
+/**
+ * Private per-user directory holding the command socket and the ready file of background services.
+ * <p>
+ * Both files must only be trusted if they belong to the current user: anybody able to create the socket first would
+ * receive the passwords sent over it. The directory is therefore kept out of world-writable locations such as the
+ * temporary directory, created with mode 0700, and files in it are only used while the file and the directory are
+ * owned by the current user and the directory is not accessible by anybody else.
+ * </p>
+ */
+public final class RuntimeDirectory {
+    private static final String NAME = "alohomora";
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private RuntimeDirectory() {
+    }
+
+    /**
+     * Resolves the default directory.
+     *
+     * @return {@code $XDG_RUNTIME_DIR/alohomora} if the runtime directory of the user is set, otherwise
+     *         {@code ~/.alohomora}
+     */
+    public static Path resolve() {
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+
+        if (runtimeDirectory != null && !runtimeDirectory.isBlank()) {
+            return Path.of(runtimeDirectory, NAME);
+        }
+
+        return Path.of(System.getProperty("user.home"), "." + NAME);
+    }
+
+    /**
+     * Creates the directory with mode 0700 if it does not exist, then checks that it is private.
+     * The permissions of an existing directory are never changed.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory cannot be created or is not private
+     */
+    public static void create(Path directory) throws IOException {
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+            } else {
+                Files.createDirectories(directory);
+            }
+        }
+
+        checkPrivateDirectory(directory);
+    }
+
+    /**
+     * Checks whether a file can be trusted, i.e. it and its directory are owned by the current user and the
+     * directory is not accessible by anybody else.
+     *
+     * @param file the file
+     * @return true if the file can be trusted
+     */
+    public static boolean isPrivate(Path file) {
+        try {
+            checkPrivateDirectory(file.toAbsolutePath().getParent());
+            checkOwner(file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a principal is the user running this process.
+     *
+     * @param principal the principal, e.g. the owner of a file or the peer of a socket
+     * @return true if the principal is the current user
+     * @throws IOException if the current user cannot be looked up
+     */
+    public static boolean isCurrentUser(UserPrincipal principal) throws IOException {
+        return principal.equals(FileSystems.getDefault().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name")));
+    }
+
+    private static void checkPrivateDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(directory + " is not a directory");
+        }
+
+        checkOwner(directory);
+
+        PosixFileAttributeView view = Files.getFileAttributeView(directory, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (view != null && !OWNER_ONLY.containsAll(view.readAttributes().permissions())) {
+            throw new IOException(directory + " is accessible by other users, restrict it to mode 0700");
+        }
+    }
+
+    private static void checkOwner(Path path) throws IOException {
+        if (!isCurrentUser(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS))) {
+            throw new IOException(path + " is not owned by the current user");
+        }
+    }
+}
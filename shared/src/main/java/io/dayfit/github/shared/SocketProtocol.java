@@ -0,0 +1,248 @@
+package io.dayfit.github.shared;
+
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Framed binary protocol spoken over the Unix domain socket between the client and background services.
+ * <p>
+ * Every message is a frame made of a 4-byte big-endian length followed by the payload. The payload of a request
+ * starts with the protocol version and the request type, the payload of a response with the protocol version
+ * and a status. Strings are encoded as a 4-byte length followed by their UTF-8 bytes, -1 standing for null.
+ * </p>
+ * <pre>
+ * PING request:   version, TYPE_PING
+ * PING response:  version, STATUS_SUCCESS, string pingResponse
+ * BATCH request:  version, TYPE_BATCH, string password, int count, count * string command
+ * BATCH response: version, status, int count, count * (byte status, string command, string message)
+ * BUSY response:  version, STATUS_BUSY, string message, sent right after accepting a connection no thread is left
+ *                 for, which is then closed
+ * </pre>
+ */
+public final class SocketProtocol {
+    public static final byte VERSION = 1;
+    public static final byte TYPE_PING = 1;
+    public static final byte TYPE_BATCH = 2;
+    public static final byte STATUS_SUCCESS = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final byte STATUS_BUSY = 2;
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private static final int INITIAL_PAYLOAD_SIZE = 256;
+
+    private SocketProtocol() {
+    }
+
+    /**
+     * Resolves the location of the socket file.
+     *
+     * @param configuredPath the configured location, null or blank meaning the default one
+     * @return the configured location, or a file in the {@link RuntimeDirectory}
+     */
+    public static Path resolveSocketPath(String configuredPath) {
+        if (configuredPath != null && !configuredPath.isBlank()) {
+            return Path.of(configuredPath.trim());
+        }
+
+        return RuntimeDirectory.resolve().resolve("cli.sock");
+    }
+
+    /**
+     * Checks that the peer of a connection is run by the current user, where the platform reports the credentials
+     * of the peer (SO_PEERCRED).
+     *
+     * @param channel the connected channel
+     * @throws SecurityException if the peer is run by another user
+     * @throws IOException       if the credentials of the peer or the current user cannot be looked up
+     */
+    public static void checkPeer(SocketChannel channel) throws IOException {
+        if (!channel.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED)) {
+            return;
+        }
+
+        UnixDomainPrincipal peer = channel.getOption(ExtendedSocketOptions.SO_PEERCRED);
+        if (!RuntimeDirectory.isCurrentUser(peer.user())) {
+            throw new SecurityException("Peer of the command socket is run by another user: " + peer.user().getName());
+        }
+    }
+
+    /**
+     * Creates a payload buffer starting with the protocol version and the given type or status.
+     *
+     * @param typeOrStatus the request type or the response status
+     * @return the payload buffer, ready for writing
+     */
+    public static ByteBuffer newPayload(byte typeOrStatus) {
+        return ByteBuffer.allocate(INITIAL_PAYLOAD_SIZE).put(VERSION).put(typeOrStatus);
+    }
+
+    /**
+     * Appends a string to a payload, growing it if necessary.
+     *
+     * @param payload the payload to append to
+     * @param value   the string to append, may be null
+     * @return the payload, which may be a new buffer
+     */
+    public static ByteBuffer putString(ByteBuffer payload, String value) {
+        if (value == null) {
+            return putInt(payload, -1);
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        payload = ensureCapacity(payload, Integer.BYTES + bytes.length);
+        return payload.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Appends an int to a payload, growing it if necessary.
+     *
+     * @param payload the payload to append to
+     * @param value   the value to append
+     * @return the payload, which may be a new buffer
+     */
+    public static ByteBuffer putInt(ByteBuffer payload, int value) {
+        return ensureCapacity(payload, Integer.BYTES).putInt(value);
+    }
+
+    /**
+     * Appends a byte to a payload, growing it if necessary.
+     *
+     * @param payload the payload to append to
+     * @param value   the value to append
+     * @return the payload, which may be a new buffer
+     */
+    public static ByteBuffer putByte(ByteBuffer payload, byte value) {
+        return ensureCapacity(payload, 1).put(value);
+    }
+
+    /**
+     * Reads a string from a payload.
+     *
+     * @param payload the payload to read from
+     * @return the string, or null if a null string has been written
+     * @throws ProtocolException if the payload is truncated
+     */
+    public static String getString(ByteBuffer payload) throws ProtocolException {
+        int length = getInt(payload);
+
+        if (length == -1) {
+            return null;
+        }
+
+        if (length < 0 || length > payload.remaining()) {
+            throw new ProtocolException("Malformed string of length " + length);
+        }
+
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    /**
+     * Reads an int from a payload.
+     *
+     * @param payload the payload to read from
+     * @return the value
+     * @throws ProtocolException if the payload is truncated
+     */
+    public static int getInt(ByteBuffer payload) throws ProtocolException {
+        if (payload.remaining() < Integer.BYTES) {
+            throw new ProtocolException("Truncated frame");
+        }
+
+        return payload.getInt();
+    }
+
+    /**
+     * Reads a byte from a payload.
+     *
+     * @param payload the payload to read from
+     * @return the value
+     * @throws ProtocolException if the payload is truncated
+     */
+    public static byte getByte(ByteBuffer payload) throws ProtocolException {
+        if (!payload.hasRemaining()) {
+            throw new ProtocolException("Truncated frame");
+        }
+
+        return payload.get();
+    }
+
+    /**
+     * Writes a payload as a single frame.
+     *
+     * @param channel the channel to write to
+     * @param payload the payload, in writing mode
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeFrame(SocketChannel channel, ByteBuffer payload) throws IOException {
+        payload.flip();
+
+        ByteBuffer[] frame = {ByteBuffer.allocate(Integer.BYTES).putInt(0, payload.remaining()), payload};
+        while (frame[1].hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Reads a single frame and checks its protocol version.
+     *
+     * @param channel the channel to read from
+     * @return the payload positioned after the version, or null if the peer closed the connection between frames
+     * @throws IOException if an I/O error occurs, the frame is malformed or its version is not supported
+     */
+    public static ByteBuffer readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+
+        if (!readFully(channel, header, true)) {
+            return null;
+        }
+
+        int length = header.getInt(0);
+        if (length < 2 || length > MAX_FRAME_SIZE) {
+            throw new ProtocolException("Invalid frame length " + length);
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, false);
+        payload.flip();
+
+        byte version = payload.get();
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported protocol version " + version);
+        }
+
+        return payload;
+    }
+
+    private static boolean readFully(SocketChannel channel, ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == 0) {
+                    return false;
+                }
+
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+        }
+
+        return true;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer payload, int needed) {
+        if (payload.remaining() >= needed) {
+            return payload;
+        }
+
+        int capacity = Math.max(payload.capacity() * 2, payload.position() + needed);
+        return ByteBuffer.allocate(capacity).put(payload.flip());
+    }
+}
@@ -0,0 +1,140 @@
+package io.dayfit.github.shared.utils;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe summary of a batch of file operations, collecting a {@link FileResult} per processed file.
+ * <p>
+ * Batches too large for keeping a result per file, such as background jobs over whole trees, can be summarized
+ * instead: only the failures are kept and every other file is only counted.
+ * </p>
+ */
+public class BatchResult {
+    private final Queue<FileResult> results = new ConcurrentLinkedQueue<>();
+    private final Consumer<FileResult> listener;
+    private final boolean retainAll;
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Creates an empty batch result.
+     */
+    public BatchResult() {
+        this(result -> {
+        });
+    }
+
+    /**
+     * Creates an empty batch result, notifying the given listener about every recorded result.
+     *
+     * @param listener the listener called on the worker thread that recorded the result, e.g. to track progress
+     */
+    public BatchResult(Consumer<FileResult> listener) {
+        this(listener, true);
+    }
+
+    private BatchResult(Consumer<FileResult> listener, boolean retainAll) {
+        this.listener = listener;
+        this.retainAll = retainAll;
+    }
+
+    /**
+     * Creates an empty batch result keeping only the results of failed files, so its memory does not grow with the
+     * number of files processed successfully.
+     *
+     * @param listener the listener called on the worker thread that recorded the result, e.g. to track progress
+     * @return the batch result
+     */
+    public static BatchResult summarizing(Consumer<FileResult> listener) {
+        return new BatchResult(listener, false);
+    }
+
+    /**
+     * Records the result of a single file.
+     *
+     * @param result the result to be recorded
+     */
+    public void add(FileResult result) {
+        count(result);
+
+        if (retainAll || !result.successful()) {
+            results.add(result);
+        }
+        listener.accept(result);
+    }
+
+    /**
+     * Records all results of another batch.
+     *
+     * @param other the batch to be merged into this one
+     */
+    public void addAll(BatchResult other) {
+        for (FileResult result : other.results) {
+            count(result);
+
+            if (retainAll || !result.successful()) {
+                results.add(result);
+            }
+        }
+    }
+
+    /**
+     * @return all recorded results, only the failures if the batch is {@link #summarizing(Consumer) summarizing}
+     */
+    public List<FileResult> getResults() {
+        return List.copyOf(results);
+    }
+
+    /**
+     * @return the results of files that could not be processed
+     */
+    public List<FileResult> getFailures() {
+        return results.stream().filter(result -> !result.successful()).toList();
+    }
+
+    /**
+     * @return the number of successfully processed files
+     */
+    public long getSucceededCount() {
+        return succeeded.sum();
+    }
+
+    /**
+     * @return the number of files skipped, because they already were in the target state
+     */
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return the number of files that could not be processed
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return true if no file of the batch has failed
+     */
+    public boolean isSuccessful() {
+        return failed.sum() == 0;
+    }
+
+    private void count(FileResult result) {
+        switch (result.status()) {
+            case PROCESSED -> succeeded.increment();
+            case SKIPPED -> skipped.increment();
+            case FAILED -> failed.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getSucceededCount() + " file(s) processed, " + getSkippedCount() + " skipped, " + getFailedCount() + " failed";
+    }
+}
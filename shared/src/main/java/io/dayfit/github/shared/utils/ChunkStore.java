@@ -0,0 +1,412 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Deduplicating store keeping the content of files as encrypted chunks, shared by all files containing them.
+ * <p>
+ * Files are split into chunks of {@link ChunkedContainer#DEFAULT_CHUNK_SIZE} bytes. Every chunk is named by its
+ * HMAC-SHA256 under a key derived from the session key and sealed into a container of its own below the store
+ * directory, unless a chunk of the same name is stored already, in which case it is neither encrypted nor written
+ * again. The file itself is replaced by its manifest: a container flagged {@link ContainerHeader#FLAG_MANIFEST}
+ * holding the store directory, the length of the file and the names of its chunks. Decrypting a manifest rebuilds
+ * the file from the store and checks every chunk against its name, so chunks cannot be swapped unnoticed.
+ * </p>
+ * <p>
+ * Names depend on the password, so they reveal nothing about the content, and files encrypted with different passwords
+ * never share chunks. Chunks are never removed, as other manifests may still refer to them.
+ * </p>
+ */
+public final class ChunkStore {
+    public static final String DEFAULT_DIRECTORY = "protectedChunks";
+
+    private static final int MANIFEST_VERSION = 1;
+    private static final int NAME_LENGTH = 32;
+    private static final int MAX_MANIFEST_SIZE = 64 * 1024 * 1024;
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[ChunkedContainer.DEFAULT_CHUNK_SIZE]);
+
+    private final Path directory;
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong deduplicatedBytes = new AtomicLong();
+
+    /**
+     * Creates a store keeping its chunks below the given directory, which is created once the first chunk is stored.
+     *
+     * @param directory the directory of the store
+     */
+    public ChunkStore(Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return the directory of the store
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of bytes encrypted and written as new chunks since the store has been created
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * @return the number of bytes found in the store already, and therefore neither encrypted nor written again
+     */
+    public long getDeduplicatedBytes() {
+        return deduplicatedBytes.get();
+    }
+
+    /**
+     * Stores the chunks of the input file and writes its manifest to the output file. The chunks are processed in
+     * parallel in batches, so the memory used is bounded by the batch, not by the size of the file.
+     *
+     * @param inputPath  the plaintext file
+     * @param outputPath the file the manifest is written to
+     * @param session    the session providing the key and ciphers
+     *
+     * @throws IOException if an I/O error occurs or the file is part of the store
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk could not be sealed
+     * @throws BadPaddingException if a chunk could not be sealed
+     */
+    void store(Path inputPath, Path outputPath, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (inputPath.toAbsolutePath().normalize().startsWith(directory)) {
+            throw new IOException("File is part of the chunk store " + directory);
+        }
+
+        try (FileChannel input = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputPath, StandardOpenOption.WRITE)) {
+            long length = input.size();
+            int chunkSize = ChunkedContainer.DEFAULT_CHUNK_SIZE;
+            int count = Math.toIntExact((length + chunkSize - 1) / chunkSize);
+            byte[][] names = new byte[count][];
+            int batch = batchSize();
+
+            for (int first = 0; first < count; first += batch) {
+                AtomicReference<Exception> failure = new AtomicReference<>();
+                List<RecursiveAction> tasks = new ArrayList<>(batch);
+
+                for (int index = first; index < Math.min(first + batch, count); index++) {
+                    int chunkIndex = index;
+                    int chunkLength = (int) Math.min(chunkSize, length - (long) index * chunkSize);
+
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            try {
+                                byte[] chunk = BUFFERS.get();
+
+                                if (ChunkedContainer.readFully(input, ByteBuffer.wrap(chunk, 0, chunkLength), (long) chunkIndex * chunkSize) < chunkLength) {
+                                    throw new IOException("File has been truncated while being stored");
+                                }
+
+                                names[chunkIndex] = storeChunk(chunk, chunkLength, session);
+                            } catch (GeneralSecurityException | IOException e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    });
+                }
+
+                ChunkedContainer.invoke(tasks, failure);
+            }
+
+            byte[] manifest = writeManifest(length, chunkSize, names);
+            byte[] sealed = ChunkedContainer.seal(manifest, manifest.length, ContainerHeader.FLAG_MANIFEST, session);
+            ChunkedContainer.writeFully(output, ByteBuffer.wrap(sealed), 0);
+        }
+    }
+
+    /**
+     * Rebuilds a file from its manifest, reading its chunks from the store the manifest refers to. The chunks are
+     * decrypted and checked against their names in parallel in batches.
+     *
+     * @param input   the manifest
+     * @param output  the file the plaintext is written to
+     * @param session the session providing the key and ciphers
+     *
+     * @throws IOException if an I/O error occurs, a chunk is missing or the manifest is corrupted
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk is malformed
+     * @throws BadPaddingException if the password is invalid or a chunk has been tampered with
+     */
+    static void restore(FileChannel input, FileChannel output, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        restore(input, output, session, null);
+    }
+
+    /**
+     * Checks that every chunk of a manifest is present in its store and matches its name, without writing anything.
+     * Chunks shared by several manifests are checked once per set of already verified chunks.
+     *
+     * @param input    the manifest
+     * @param session  the session providing the key and ciphers
+     * @param verified the names of the chunks verified so far, by store directory, updated with the chunks verified
+     * @return the number of bytes read from the store
+     *
+     * @throws IOException if an I/O error occurs, a chunk is missing or the manifest is corrupted
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk is malformed
+     * @throws BadPaddingException if the password is invalid or a chunk has been tampered with
+     */
+    static long verify(FileChannel input, CryptoSession session, Map<Path, Set<ByteBuffer>> verified) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        return restore(input, null, session, verified);
+    }
+
+    /**
+     * Checks a chunk of a store on its own: its tag and, if it lies where the store keeps it, its name.
+     *
+     * @param path    the chunk
+     * @param input   the opened chunk
+     * @param header  the header of the chunk
+     * @param session the session providing the key and ciphers
+     *
+     * @throws IOException if an I/O error occurs or the chunk is corrupted
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if the chunk is malformed
+     * @throws BadPaddingException if the password is invalid or the chunk has been tampered with
+     */
+    static void verifyChunk(Path path, FileChannel input, ContainerHeader header, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (header.plaintextLength() > ChunkedContainer.DEFAULT_CHUNK_SIZE || input.size() != header.containerLength()) {
+            throw new BadPaddingException("Encrypted file is truncated or corrupted");
+        }
+
+        ByteBuffer sealed = ByteBuffer.allocate((int) input.size());
+        ChunkedContainer.readFully(input, sealed, 0);
+        byte[] chunk = ChunkedContainer.open(sealed.array(), session);
+        byte[] name = nameOf(path);
+
+        if (name != null && !MessageDigest.isEqual(name, session.chunkMac().doFinal(chunk))) {
+            throw new BadPaddingException("Chunk " + path.getFileName() + " does not match its name");
+        }
+    }
+
+    /**
+     * Restores or verifies the chunks of a manifest.
+     *
+     * @param output   the file the plaintext is written to, null to only verify the chunks
+     * @param verified the names of the chunks verified so far, by store directory, null to check every chunk
+     * @return the number of bytes read from the store
+     */
+    private static long restore(FileChannel input, FileChannel output, CryptoSession session, Map<Path, Set<ByteBuffer>> verified) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (input.size() > MAX_MANIFEST_SIZE) {
+            throw new BadPaddingException("Encrypted file is truncated or corrupted");
+        }
+
+        ByteBuffer sealed = ByteBuffer.allocate((int) input.size());
+        ChunkedContainer.readFully(input, sealed, 0);
+        Manifest manifest = readManifest(ChunkedContainer.open(sealed.array(), session));
+        Set<ByteBuffer> verifiedChunks = verified != null ? verified.computeIfAbsent(manifest.directory(), directory -> ConcurrentHashMap.newKeySet()) : null;
+        AtomicLong bytesRead = new AtomicLong();
+        int batch = batchSize() * 2;
+
+        for (int first = 0; first < manifest.names().length; first += batch) {
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<RecursiveAction> tasks = new ArrayList<>(batch);
+
+            for (int index = first; index < Math.min(first + batch, manifest.names().length); index++) {
+                int chunkIndex = index;
+
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            ByteBuffer name = ByteBuffer.wrap(manifest.names()[chunkIndex]);
+
+                            if (verifiedChunks != null && verifiedChunks.contains(name)) {
+                                return;
+                            }
+
+                            byte[] chunk = loadChunk(manifest, chunkIndex, session);
+                            bytesRead.addAndGet(chunk.length);
+
+                            if (output != null) {
+                                ChunkedContainer.writeFully(output, ByteBuffer.wrap(chunk), (long) chunkIndex * manifest.chunkSize());
+                            } else if (verifiedChunks != null) {
+                                verifiedChunks.add(name);
+                            }
+                        } catch (GeneralSecurityException | IOException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+
+            ChunkedContainer.invoke(tasks, failure);
+        }
+
+        return bytesRead.get();
+    }
+
+    private byte[] storeChunk(byte[] chunk, int length, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        Mac mac = session.chunkMac();
+        mac.update(chunk, 0, length);
+        byte[] name = mac.doFinal();
+        Path path = pathOf(directory, name);
+
+        if (Files.exists(path)) {
+            deduplicatedBytes.addAndGet(length);
+            return name;
+        }
+
+        Files.createDirectories(path.getParent());
+        Path tempPath = Encryptor.createSiblingTempFile(path);
+
+        try {
+            Files.write(tempPath, ChunkedContainer.seal(chunk, length, ContainerHeader.FLAG_STORED_CHUNK, session));
+            Encryptor.replaceAtomically(tempPath, path);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        storedBytes.addAndGet(length);
+        return name;
+    }
+
+    private static byte[] loadChunk(Manifest manifest, int index, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        byte[] name = manifest.names()[index];
+        Path path = pathOf(manifest.directory(), name);
+        byte[] chunk;
+
+        try {
+            chunk = ChunkedContainer.open(Files.readAllBytes(path), session);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Chunk " + path.getFileName() + " is missing from the chunk store " + manifest.directory());
+        }
+
+        long expected = Math.min(manifest.chunkSize(), manifest.length() - (long) index * manifest.chunkSize());
+        Mac mac = session.chunkMac();
+
+        if (chunk.length != expected || !MessageDigest.isEqual(name, mac.doFinal(chunk))) {
+            throw new BadPaddingException("Chunk " + path.getFileName() + " does not match its name");
+        }
+
+        return chunk;
+    }
+
+    private byte[] writeManifest(long length, int chunkSize, byte[][] names) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + names.length * NAME_LENGTH);
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(MANIFEST_VERSION);
+            output.writeUTF(directory.toString());
+            output.writeLong(length);
+            output.writeInt(chunkSize);
+            output.writeInt(names.length);
+
+            for (byte[] name : names) {
+                output.write(name);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static Manifest readManifest(byte[] plaintext) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(plaintext))) {
+            if (input.readUnsignedByte() != MANIFEST_VERSION) {
+                throw new IOException("Unsupported manifest version");
+            }
+
+            Path directory = Path.of(input.readUTF());
+            long length = input.readLong();
+            int chunkSize = input.readInt();
+            int count = input.readInt();
+
+            if (length < 0 || chunkSize <= 0 || count < 0 || count != (length + chunkSize - 1) / chunkSize
+                    || (long) count * NAME_LENGTH != input.available()) {
+                throw new IOException("Corrupted manifest");
+            }
+
+            byte[][] names = new byte[count][NAME_LENGTH];
+            for (byte[] name : names) {
+                input.readFully(name);
+            }
+
+            return new Manifest(directory, length, chunkSize, names);
+        }
+    }
+
+    private static Path pathOf(Path directory, byte[] name) {
+        String hex = HexFormat.of().formatHex(name);
+        return directory.resolve(hex.substring(0, 2)).resolve(hex.substring(2));
+    }
+
+    /**
+     * @param path a chunk
+     * @return the name of the chunk as given by its path, null if it does not lie where the store keeps chunks
+     */
+    private static byte[] nameOf(Path path) {
+        Path parent = path.getParent();
+
+        if (parent == null || parent.getFileName() == null) {
+            return null;
+        }
+
+        String prefix = parent.getFileName().toString();
+
+        if (prefix.length() != 2) {
+            return null;
+        }
+
+        try {
+            byte[] name = HexFormat.of().parseHex(prefix + path.getFileName());
+            return name.length == NAME_LENGTH ? name : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int batchSize() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism() : DirectoryEngine.common().getParallelism();
+    }
+
+    /**
+     * Content of a manifest.
+     *
+     * @param directory the directory of the store holding the chunks
+     * @param length    the length of the file
+     * @param chunkSize the number of bytes per chunk
+     * @param names     the names of the chunks, in file order
+     */
+    private record Manifest(Path directory, long length, int chunkSize, byte[][] names) {
+    }
+}
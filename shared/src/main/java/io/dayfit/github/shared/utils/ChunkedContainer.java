@@ -0,0 +1,445 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads and writes the chunked container format described by {@link ContainerHeader}.
+ * <p>
+ * Every chunk is sealed independently with AES-GCM, using a nonce derived from the per-file nonce prefix and the
+ * chunk index, and the serialized header as additional authenticated data. Chunks can therefore be encrypted and
+ * decrypted by several threads at once, and any modification of the header, a chunk or the chunk order is detected.
+ * </p>
+ */
+public final class ChunkedContainer {
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int CHUNKS_PER_TASK = 4;
+    static final SecureRandom RANDOM = new SecureRandom();
+    private static final BufferPool CHUNK_POOL = new BufferPool(DEFAULT_CHUNK_SIZE + ContainerHeader.TAG_LENGTH, 2 * Runtime.getRuntime().availableProcessors(), false);
+
+    private ChunkedContainer() {
+    }
+
+    /**
+     * Checks whether the file starts with the container magic. Only the first bytes of the file are read.
+     *
+     * @param path the file to be checked
+     * @return true if the file is a container
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean isContainer(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(ContainerHeader.SIZE);
+            readFully(channel, magic, 0);
+            return ContainerHeader.hasMagic(magic.array());
+        }
+    }
+
+    /**
+     * Reads and validates the header of a container.
+     *
+     * @param channel the channel of the container
+     * @return the header of the container
+     * @throws IOException if an I/O error occurs or the file is not a supported container
+     */
+    public static ContainerHeader readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ContainerHeader.SIZE);
+
+        if (readFully(channel, buffer, 0) < ContainerHeader.SIZE) {
+            throw new IOException("Not an encrypted container");
+        }
+
+        return ContainerHeader.fromBytes(buffer.array());
+    }
+
+    /**
+     * Encrypts the input file into a new container, processing the chunks in parallel. The chunks are compressed first
+     * if compression is requested and sampling the input shows it compresses.
+     *
+     * @param inputPath  the plaintext file
+     * @param outputPath the file the container is written to
+     * @param session    the session providing the key and ciphers
+     * @param mapped      true to read the input through memory-mapped regions, ignored for compressed chunks
+     * @param compression the compression to apply to the chunks
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk could not be sealed
+     * @throws BadPaddingException if a chunk could not be sealed
+     */
+    static void encrypt(Path inputPath, Path outputPath, CryptoSession session, boolean mapped, Compression compression) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        try (FileChannel input = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputPath, StandardOpenOption.WRITE)) {
+            if (compression != Compression.NONE && !CompressedContainer.isCompressible(input)) {
+                compression = Compression.NONE;
+            }
+
+            ContainerHeader header = new ContainerHeader(ContainerHeader.CURRENT_VERSION, ContainerHeader.ALGORITHM_AES_GCM, compression.getId(),
+                    DEFAULT_CHUNK_SIZE, input.size(), RANDOM.nextLong());
+
+            writeFully(output, ByteBuffer.wrap(header.toBytes()), 0);
+
+            if (header.isCompressed()) {
+                CompressedContainer.encrypt(input, output, header, session);
+            } else {
+                processChunks(new ChunkJob(header, session, input, output, true, mapped));
+            }
+        }
+    }
+
+    /**
+     * Decrypts a container into the output file, processing the chunks in parallel.
+     *
+     * @param inputPath  the container
+     * @param outputPath the file the plaintext is written to
+     * @param session    the session providing the key and ciphers
+     * @param mapped     true to read the input through memory-mapped regions
+     *
+     * @throws IOException if an I/O error occurs or the file is not a supported container
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk is malformed
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     */
+    static void decrypt(Path inputPath, Path outputPath, CryptoSession session, boolean mapped) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        try (FileChannel input = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputPath, StandardOpenOption.WRITE)) {
+            ContainerHeader header = readHeader(input);
+
+            if (header.isPack()) {
+                throw new IOException("File is an encrypted pack of a directory, it has to be unpacked instead");
+            }
+
+            if (header.isStoredChunk()) {
+                throw new IOException("File is a chunk of a chunk store, it is restored through the files referring to it");
+            }
+
+            if (header.isManifest()) {
+                ChunkStore.restore(input, output, session);
+                return;
+            }
+
+            if (header.isCompressed()) {
+                CompressedContainer.decrypt(input, output, header, session);
+                return;
+            }
+
+            if (input.size() != header.containerLength()) {
+                throw new BadPaddingException("Encrypted file is truncated or corrupted");
+            }
+
+            processChunks(new ChunkJob(header, session, input, output, false, mapped));
+        }
+    }
+
+    /**
+     * Authenticates every chunk of an uncompressed container in parallel without writing the plaintext anywhere.
+     *
+     * @param input   the container
+     * @param header  the header of the container
+     * @param session the session providing the key and ciphers
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk is malformed
+     * @throws BadPaddingException if the password is invalid or the container is corrupted
+     */
+    static void verify(FileChannel input, ContainerHeader header, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (input.size() != header.containerLength()) {
+            throw new BadPaddingException("Encrypted file is truncated or corrupted");
+        }
+
+        processChunks(new ChunkJob(header, session, input, null, false, false));
+    }
+
+    /**
+     * Seals the plaintext into a complete uncompressed container held in memory, for data small enough to be held at
+     * once, such as the chunks and manifests of a {@link ChunkStore}.
+     *
+     * @param plaintext the plaintext
+     * @param length    the number of plaintext bytes to be sealed, starting at the beginning of the array
+     * @param flags     the flags of the container
+     * @param session   the session providing the key and ciphers
+     * @return the container
+     *
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk could not be sealed
+     * @throws BadPaddingException if a chunk could not be sealed
+     */
+    static byte[] seal(byte[] plaintext, int length, int flags, CryptoSession session) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        ContainerHeader header = new ContainerHeader(ContainerHeader.CURRENT_VERSION, ContainerHeader.ALGORITHM_AES_GCM, flags,
+                DEFAULT_CHUNK_SIZE, length, RANDOM.nextLong());
+        byte[] headerBytes = header.toBytes();
+        byte[] container = new byte[Math.toIntExact(header.containerLength())];
+        Cipher cipher = session.containerCipher();
+
+        System.arraycopy(headerBytes, 0, container, 0, ContainerHeader.SIZE);
+
+        try {
+            for (long index = 0; index < header.chunkCount(); index++) {
+                initChunkCipher(Cipher.ENCRYPT_MODE, cipher, session.getKey(), header, headerBytes, index);
+                cipher.doFinal(plaintext, (int) (index * header.chunkSize()), header.chunkLength(index), container, (int) header.chunkOffset(index));
+            }
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Container buffer is too small", e);
+        }
+
+        return container;
+    }
+
+    /**
+     * Authenticates and decrypts a complete uncompressed container held in memory.
+     *
+     * @param container the container
+     * @param session   the session providing the key and ciphers
+     * @return the plaintext
+     *
+     * @throws IOException if the bytes are not a supported container
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk is malformed
+     * @throws BadPaddingException if the password is invalid or the container is corrupted
+     */
+    static byte[] open(byte[] container, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        ContainerHeader header = ContainerHeader.fromBytes(container);
+
+        if (header.isCompressed() || container.length != header.containerLength()) {
+            throw new BadPaddingException("Encrypted file is truncated or corrupted");
+        }
+
+        byte[] headerBytes = Arrays.copyOf(container, ContainerHeader.SIZE);
+        byte[] plaintext = new byte[Math.toIntExact(header.plaintextLength())];
+        Cipher cipher = session.containerCipher();
+
+        try {
+            for (long index = 0; index < header.chunkCount(); index++) {
+                initChunkCipher(Cipher.DECRYPT_MODE, cipher, session.getKey(), header, headerBytes, index);
+                cipher.doFinal(container, (int) header.chunkOffset(index), header.chunkLength(index) + ContainerHeader.TAG_LENGTH,
+                        plaintext, (int) (index * header.chunkSize()));
+            }
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Plaintext buffer is too small", e);
+        }
+
+        return plaintext;
+    }
+
+    /**
+     * Creates a cipher initialized for a single chunk of a container.
+     *
+     * @param mode   {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param cipher an AES-GCM cipher instance
+     * @param key    the key of the container
+     * @param header      the header of the container
+     * @param headerBytes the serialized header, authenticated with every chunk
+     * @param index       the index of the chunk
+     * @throws InvalidKeyException if the given key is invalid
+     */
+    static void initChunkCipher(int mode, Cipher cipher, SecretKey key, ContainerHeader header, byte[] headerBytes, long index) throws InvalidKeyException {
+        try {
+            cipher.init(mode, key, new GCMParameterSpec(ContainerHeader.TAG_LENGTH * 8, header.nonce(index)));
+            cipher.updateAAD(headerBytes);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new IllegalStateException("Invalid chunk parameters", e);
+        }
+    }
+
+    /**
+     * Runs the chunk job and rethrows the first failure of any chunk.
+     */
+    private static void processChunks(ChunkJob job) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        invoke(List.of(new ChunkTask(job, 0, job.header.chunkCount())), job.failure);
+    }
+
+    /**
+     * Runs the tasks on the current fork-join pool, or on the common directory engine if called from outside a pool,
+     * and rethrows the first failure recorded by any of them.
+     *
+     * @param tasks   the tasks to be run
+     * @param failure the first failure of any task, set by the tasks
+     */
+    static void invoke(Collection<RecursiveAction> tasks, AtomicReference<Exception> failure) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        RecursiveAction all = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        };
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            all.invoke();
+        } else {
+            DirectoryEngine.common().invoke(all);
+        }
+
+        rethrow(failure.get());
+    }
+
+    private static void rethrow(Exception failure) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (failure != null) {
+            rethrowIf(failure, IOException.class);
+            rethrowIf(failure, NoSuchAlgorithmException.class);
+            rethrowIf(failure, NoSuchPaddingException.class);
+            rethrowIf(failure, InvalidKeyException.class);
+            rethrowIf(failure, IllegalBlockSizeException.class);
+            rethrowIf(failure, BadPaddingException.class);
+            throw new IllegalStateException("Could not process chunk", failure);
+        }
+    }
+
+    private static <T extends Exception> void rethrowIf(Exception failure, Class<T> type) throws T {
+        if (type.isInstance(failure)) {
+            throw type.cast(failure);
+        }
+    }
+
+    static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position + total);
+            if (bytesRead == -1) {
+                break;
+            }
+            total += bytesRead;
+        }
+
+        return total;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * State shared by all tasks of a single container operation. Without an output, chunks are only authenticated.
+     */
+    private static class ChunkJob {
+        final ContainerHeader header;
+        final byte[] headerBytes;
+        final CryptoSession session;
+        final FileChannel input;
+        final FileChannel output;
+        final boolean encryption;
+        final boolean mapped;
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        ChunkJob(ContainerHeader header, CryptoSession session, FileChannel input, FileChannel output, boolean encryption, boolean mapped) {
+            this.header = header;
+            this.headerBytes = header.toBytes();
+            this.session = session;
+            this.input = input;
+            this.output = output;
+            this.encryption = encryption;
+            this.mapped = mapped;
+        }
+
+        long inputOffset(long index) {
+            return encryption ? index * header.chunkSize() : header.chunkOffset(index);
+        }
+
+        long outputOffset(long index) {
+            return encryption ? header.chunkOffset(index) : index * header.chunkSize();
+        }
+
+        int inputLength(long index) {
+            return header.chunkLength(index) + (encryption ? 0 : ContainerHeader.TAG_LENGTH);
+        }
+    }
+
+    /**
+     * Task processing a range of chunks, splitting itself while the range is larger than {@value #CHUNKS_PER_TASK} chunks.
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private final ChunkJob job;
+        private final long from;
+        private final long to;
+
+        ChunkTask(ChunkJob job, long from, long to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNKS_PER_TASK) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(job, from, middle), new ChunkTask(job, middle, to));
+                return;
+            }
+
+            int bufferSize = job.header.chunkSize() + ContainerHeader.TAG_LENGTH;
+            boolean pooled = bufferSize == DEFAULT_CHUNK_SIZE + ContainerHeader.TAG_LENGTH;
+            ByteBuffer inputBuffer = pooled ? CHUNK_POOL.acquire() : ByteBuffer.allocate(bufferSize);
+            ByteBuffer outputBuffer = pooled ? CHUNK_POOL.acquire() : ByteBuffer.allocate(bufferSize);
+
+            try {
+                Cipher cipher = job.session.containerCipher();
+                ByteBuffer region = job.mapped ? mapRegion() : null;
+
+                for (long index = from; index < to && job.failure.get() == null; index++) {
+                    int length = job.inputLength(index);
+                    inputBuffer.clear().limit(length);
+
+                    if (region != null) {
+                        region.get(inputBuffer.array(), 0, length);
+                        inputBuffer.position(length);
+                    } else if (readFully(job.input, inputBuffer, job.inputOffset(index)) < length) {
+                        throw new BadPaddingException("Encrypted file is truncated or corrupted");
+                    }
+
+                    inputBuffer.flip();
+                    outputBuffer.clear();
+                    initChunkCipher(job.encryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, cipher, job.session.getKey(), job.header, job.headerBytes, index);
+                    cipher.doFinal(inputBuffer, outputBuffer);
+
+                    if (job.output != null) {
+                        writeFully(job.output, outputBuffer.flip(), job.outputOffset(index));
+                    }
+                }
+            } catch (GeneralSecurityException | IOException e) {
+                job.failure.compareAndSet(null, e);
+            } finally {
+                if (pooled) {
+                    CHUNK_POOL.release(inputBuffer);
+                    CHUNK_POOL.release(outputBuffer);
+                }
+            }
+        }
+
+        private ByteBuffer mapRegion() throws IOException {
+            long start = job.inputOffset(from);
+            long end = job.inputOffset(to - 1) + job.inputLength(to - 1);
+            return job.input.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+    }
+}
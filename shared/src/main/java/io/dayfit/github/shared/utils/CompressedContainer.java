@@ -0,0 +1,354 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes chunked containers whose chunks are compressed before they are encrypted.
+ * <p>
+ * Compressed chunks vary in size, so they are stored one after another behind the {@link ContainerHeader}, each
+ * sealed on its own exactly like the chunks of {@link ChunkedContainer}. The plaintext of every chunk starts with a
+ * byte telling whether the rest is deflated or stored as it is, as chunks that do not shrink are stored uncompressed.
+ * The chunks are followed by an index of their offsets, sealed with the nonce following the one of the last chunk,
+ * and by the offset of the index in the last {@value #FOOTER_LENGTH} bytes. Chunks can therefore still be decrypted
+ * in parallel and read at random, and tampering with the index or the offset of the index is detected.
+ * </p>
+ * <p>
+ * While encrypting, chunks are compressed and sealed in parallel in batches and written in order, so the memory used
+ * is bounded by the batch, not by the size of the file.
+ * </p>
+ */
+final class CompressedContainer {
+    static final int STORED = 0;
+    static final int DEFLATED = 1;
+    static final int SAMPLE_SIZE = 256 * 1024;
+    static final int MIN_COMPRESSED_SIZE = 1024;
+    static final double MAX_SAMPLE_ENTROPY = 7.5;
+
+    private static final int FOOTER_LENGTH = Long.BYTES;
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private CompressedContainer() {
+    }
+
+    /**
+     * Estimates whether the content of a file compresses, from the byte entropy of its first {@value #SAMPLE_SIZE}
+     * bytes. Already compressed or encrypted data, such as media and archives, is close to 8 bits per byte.
+     *
+     * @param input the file to be sampled
+     * @return true if compressing the file is expected to save space
+     * @throws IOException if an I/O error occurs
+     */
+    static boolean isCompressible(FileChannel input) throws IOException {
+        if (input.size() < MIN_COMPRESSED_SIZE) {
+            return false;
+        }
+
+        ByteBuffer sample = ByteBuffer.allocate((int) Math.min(SAMPLE_SIZE, input.size()));
+        int length = ChunkedContainer.readFully(input, sample, 0);
+        long[] counts = new long[256];
+
+        for (int i = 0; i < length; i++) {
+            counts[Byte.toUnsignedInt(sample.get(i))]++;
+        }
+
+        double entropy = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                double probability = (double) count / length;
+                entropy -= probability * Math.log(probability) / Math.log(2);
+            }
+        }
+
+        return entropy < MAX_SAMPLE_ENTROPY;
+    }
+
+    /**
+     * Compresses and encrypts the input into the output, right behind the already written header.
+     *
+     * @param input   the plaintext file
+     * @param output  the container being written
+     * @param header  the header of the container
+     * @param session the session providing the key and ciphers
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk could not be sealed
+     * @throws BadPaddingException if a chunk could not be sealed
+     */
+    static void encrypt(FileChannel input, FileChannel output, ContainerHeader header, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        byte[] headerBytes = header.toBytes();
+        long count = header.chunkCount();
+        long[] offsets = new long[Math.toIntExact(count) + 1];
+        long position = ContainerHeader.SIZE;
+        int batch = batchSize();
+
+        for (long first = 0; first < count; first += batch) {
+            int size = (int) Math.min(batch, count - first);
+            byte[][] sealed = new byte[size][];
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<RecursiveAction> tasks = new ArrayList<>(size);
+
+            for (int i = 0; i < size; i++) {
+                int slot = i;
+                long index = first + i;
+
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            sealed[slot] = sealChunk(input, header, headerBytes, session, index);
+                        } catch (GeneralSecurityException | IOException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+
+            ChunkedContainer.invoke(tasks, failure);
+
+            for (int i = 0; i < size; i++) {
+                offsets[(int) (first + i)] = position;
+                ChunkedContainer.writeFully(output, ByteBuffer.wrap(sealed[i]), position);
+                position += sealed[i].length;
+            }
+        }
+
+        offsets[offsets.length - 1] = position;
+
+        ByteBuffer index = ByteBuffer.allocate((offsets.length - 1) * Long.BYTES);
+        for (int i = 0; i < offsets.length - 1; i++) {
+            index.putLong(offsets[i]);
+        }
+
+        Cipher cipher = session.containerCipher();
+        ChunkedContainer.initChunkCipher(Cipher.ENCRYPT_MODE, cipher, session.getKey(), header, headerBytes, count);
+        byte[] sealedIndex = cipher.doFinal(index.array());
+
+        ChunkedContainer.writeFully(output, ByteBuffer.wrap(sealedIndex), position);
+        ChunkedContainer.writeFully(output, ByteBuffer.allocate(FOOTER_LENGTH).putLong(0, position), position + sealedIndex.length);
+    }
+
+    /**
+     * Decrypts and decompresses a container into the output file, processing the chunks in parallel.
+     *
+     * @param input   the container
+     * @param output  the file the plaintext is written to, null to only authenticate the chunks
+     * @param header  the header of the container
+     * @param session the session providing the key and ciphers
+     *
+     * @throws IOException if an I/O error occurs or the container is corrupted
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk is malformed
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     */
+    static void decrypt(FileChannel input, FileChannel output, ContainerHeader header, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        byte[] headerBytes = header.toBytes();
+        long[] offsets = readIndex(input, header, headerBytes, session);
+        long count = header.chunkCount();
+        int batch = batchSize() * 4;
+
+        for (long first = 0; first < count; first += batch) {
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<RecursiveAction> tasks = new ArrayList<>();
+
+            for (long index = first; index < Math.min(first + batch, count); index++) {
+                long chunkIndex = index;
+
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            byte[] chunk = openChunk(input, header, headerBytes, session, offsets, chunkIndex);
+
+                            if (output != null) {
+                                ChunkedContainer.writeFully(output, ByteBuffer.wrap(chunk), chunkIndex * header.chunkSize());
+                            }
+                        } catch (GeneralSecurityException | IOException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+
+            ChunkedContainer.invoke(tasks, failure);
+        }
+    }
+
+    /**
+     * Reads and authenticates the index of a compressed container.
+     *
+     * @param channel     the container
+     * @param header      the header of the container
+     * @param headerBytes the serialized header
+     * @param session     the session providing the key and ciphers
+     * @return the offset of every chunk, followed by the offset of the index, which ends the last chunk
+     * @throws IOException if an I/O error occurs or the container is truncated
+     * @throws BadPaddingException if the password is invalid or the index has been tampered with
+     */
+    static long[] readIndex(FileChannel channel, ContainerHeader header, byte[] headerBytes, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        long count = header.chunkCount();
+        long indexLength = count * Long.BYTES + ContainerHeader.TAG_LENGTH;
+        long size = channel.size();
+
+        if (count > Integer.MAX_VALUE / Long.BYTES || size < ContainerHeader.SIZE + indexLength + FOOTER_LENGTH) {
+            throw new BadPaddingException("Encrypted file is truncated or corrupted");
+        }
+
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH);
+        ChunkedContainer.readFully(channel, footer, size - FOOTER_LENGTH);
+        long indexOffset = footer.getLong(0);
+
+        if (indexOffset + indexLength + FOOTER_LENGTH != size) {
+            throw new BadPaddingException("Encrypted file is truncated or corrupted");
+        }
+
+        ByteBuffer sealed = ByteBuffer.allocate((int) indexLength);
+        ChunkedContainer.readFully(channel, sealed, indexOffset);
+
+        Cipher cipher = session.containerCipher();
+        ChunkedContainer.initChunkCipher(Cipher.DECRYPT_MODE, cipher, session.getKey(), header, headerBytes, count);
+        ByteBuffer index = ByteBuffer.wrap(cipher.doFinal(sealed.array()));
+
+        long[] offsets = new long[(int) count + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = index.getLong();
+        }
+        offsets[(int) count] = indexOffset;
+
+        for (int i = 0; i < count; i++) {
+            long length = offsets[i + 1] - offsets[i];
+
+            if (offsets[i] < ContainerHeader.SIZE || length <= ContainerHeader.TAG_LENGTH || length > header.chunkLength(i) + 1L + ContainerHeader.TAG_LENGTH) {
+                throw new BadPaddingException("Encrypted file is truncated or corrupted");
+            }
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Decrypts, authenticates and decompresses a single chunk.
+     *
+     * @param channel     the container
+     * @param header      the header of the container
+     * @param headerBytes the serialized header
+     * @param session     the session providing the key and ciphers
+     * @param offsets     the index of the container
+     * @param index       the index of the chunk
+     * @return the plaintext of the chunk
+     * @throws IOException if an I/O error occurs or the chunk is corrupted
+     * @throws BadPaddingException if the password is invalid or the chunk has been tampered with
+     */
+    static byte[] openChunk(FileChannel channel, ContainerHeader header, byte[] headerBytes, CryptoSession session, long[] offsets, long index) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        ByteBuffer sealed = ByteBuffer.allocate((int) (offsets[(int) index + 1] - offsets[(int) index]));
+
+        if (ChunkedContainer.readFully(channel, sealed, offsets[(int) index]) < sealed.capacity()) {
+            throw new BadPaddingException("Encrypted file is truncated or corrupted");
+        }
+
+        Cipher cipher = session.containerCipher();
+        ChunkedContainer.initChunkCipher(Cipher.DECRYPT_MODE, cipher, session.getKey(), header, headerBytes, index);
+        byte[] stored = cipher.doFinal(sealed.array());
+        int length = header.chunkLength(index);
+
+        if (stored[0] == STORED) {
+            if (stored.length - 1 != length) {
+                throw new IOException("Corrupted chunk " + index);
+            }
+            byte[] chunk = new byte[length];
+            System.arraycopy(stored, 1, chunk, 0, length);
+            return chunk;
+        }
+
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(stored, 1, stored.length - 1);
+
+        try {
+            byte[] chunk = new byte[length];
+            int inflated = 0;
+
+            while (inflated < length && !inflater.finished()) {
+                int bytes = inflater.inflate(chunk, inflated, length - inflated);
+                if (bytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += bytes;
+            }
+
+            if (inflated != length || !inflater.finished()) {
+                throw new IOException("Corrupted chunk " + index);
+            }
+
+            return chunk;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted chunk " + index + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads, compresses and seals a single chunk. Chunks that do not shrink are stored as they are.
+     */
+    private static byte[] sealChunk(FileChannel input, ContainerHeader header, byte[] headerBytes, CryptoSession session, long index) throws IOException, GeneralSecurityException {
+        int length = header.chunkLength(index);
+        ByteBuffer plain = ByteBuffer.allocate(length);
+
+        if (ChunkedContainer.readFully(input, plain, index * header.chunkSize()) < length) {
+            throw new IOException("File changed while being encrypted");
+        }
+
+        byte[] stored = new byte[length + 1];
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(plain.array(), 0, length);
+        deflater.finish();
+
+        int compressed = 0;
+        while (!deflater.finished() && compressed < length) {
+            compressed += deflater.deflate(stored, 1 + compressed, length - compressed);
+        }
+
+        int storedLength;
+        if (deflater.finished() && compressed < length) {
+            stored[0] = DEFLATED;
+            storedLength = 1 + compressed;
+        } else {
+            stored[0] = STORED;
+            System.arraycopy(plain.array(), 0, stored, 1, length);
+            storedLength = 1 + length;
+        }
+
+        Cipher cipher = session.containerCipher();
+        ChunkedContainer.initChunkCipher(Cipher.ENCRYPT_MODE, cipher, session.getKey(), header, headerBytes, index);
+        return cipher.doFinal(stored, 0, storedLength);
+    }
+
+    /**
+     * @return the number of chunks processed in parallel at once, one per worker of the current pool
+     */
+    private static int batchSize() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism() : DirectoryEngine.common().getParallelism();
+    }
+}
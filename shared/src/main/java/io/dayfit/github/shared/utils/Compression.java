@@ -0,0 +1,53 @@
+package io.dayfit.github.shared.utils;
+
+import java.io.IOException;
+
+/**
+ * Compression applied to the plaintext of a chunked container before it is encrypted.
+ * <p>
+ * The algorithm is recorded in the flags of the {@link ContainerHeader}, so files are decrypted correctly whatever
+ * compression is configured at the time.
+ * </p>
+ */
+public enum Compression {
+    /**
+     * Chunks are encrypted as they are.
+     */
+    NONE(0),
+
+    /**
+     * Chunks are compressed with {@link java.util.zip.Deflater} before they are encrypted, unless sampling the start of
+     * the file shows its content does not compress, for example media or archives.
+     */
+    DEFLATE(1);
+
+    private final int id;
+
+    Compression(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the identifier stored in the container header
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Looks up the compression stored in a container header.
+     *
+     * @param id the identifier stored in the container header
+     * @return the compression with the given identifier
+     * @throws IOException if the identifier is unknown
+     */
+    public static Compression fromId(int id) throws IOException {
+        for (Compression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+
+        throw new IOException("Unsupported container compression: " + id);
+    }
+}
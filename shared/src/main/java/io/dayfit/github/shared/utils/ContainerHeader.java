@@ -0,0 +1,179 @@
+package io.dayfit.github.shared.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Header of the chunked container format written by {@link ChunkedContainer}.
+ * <p>
+ * Layout (big-endian, {@value #SIZE} bytes): magic (8), version (1), algorithm (1), flags (1), reserved (1),
+ * chunk size (4), plaintext length (8), nonce prefix (8). The header is followed by one sealed chunk per
+ * {@code chunkSize} bytes of plaintext, each consisting of the ciphertext and a {@value #TAG_LENGTH} byte tag.
+ * </p>
+ * <p>
+ * The lowest four bits of the flags hold the {@link Compression} of the chunks. Compressed chunks vary in size, so
+ * compressed containers use the layout described by {@link CompressedContainer} instead of fixed chunk offsets.
+ * {@link #FLAG_PACK} marks containers holding a whole directory tree written by {@link PackArchive}, and
+ * {@link #FLAG_MANIFEST} marks containers holding the list of chunks of a file kept in a {@link ChunkStore}, whose
+ * chunks are containers of their own marked by {@link #FLAG_STORED_CHUNK}.
+ * </p>
+ *
+ * @param version         the format version
+ * @param algorithm       the identifier of the cipher used for the chunks
+ * @param flags           format flags, holding the compression of the chunks
+ * @param chunkSize       the number of plaintext bytes per chunk
+ * @param plaintextLength the total number of plaintext bytes
+ * @param noncePrefix     random per-file value, combined with the chunk index to form the chunk nonces
+ */
+public record ContainerHeader(int version, int algorithm, int flags, int chunkSize, long plaintextLength, long noncePrefix) {
+    public static final int SIZE = 32;
+    public static final int TAG_LENGTH = 16;
+    public static final int NONCE_LENGTH = 12;
+    public static final int CURRENT_VERSION = 1;
+    public static final int ALGORITHM_AES_GCM = 1;
+    public static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    public static final int COMPRESSION_MASK = 0x0F;
+    public static final int FLAG_PACK = 0x10;
+    public static final int FLAG_MANIFEST = 0x20;
+    public static final int FLAG_STORED_CHUNK = 0x40;
+
+    private static final byte[] MAGIC = "ALOHOMRA".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Checks whether the given bytes start with the container magic.
+     *
+     * @param bytes the first bytes of a file
+     * @return true if the bytes start with the container magic
+     */
+    public static boolean hasMagic(byte[] bytes) {
+        return bytes.length >= MAGIC.length && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Parses a header, validating magic, version, algorithm and chunk size.
+     *
+     * @param bytes the first {@value #SIZE} bytes of a container
+     * @return the parsed header
+     * @throws IOException if the bytes are not a supported container header
+     */
+    public static ContainerHeader fromBytes(byte[] bytes) throws IOException {
+        if (bytes.length < SIZE || !hasMagic(bytes)) {
+            throw new IOException("Not an encrypted container");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, MAGIC.length, SIZE - MAGIC.length);
+        int version = Byte.toUnsignedInt(buffer.get());
+        int algorithm = Byte.toUnsignedInt(buffer.get());
+        int flags = Byte.toUnsignedInt(buffer.get());
+        buffer.get();
+        ContainerHeader header = new ContainerHeader(version, algorithm, flags, buffer.getInt(), buffer.getLong(), buffer.getLong());
+
+        if (version != CURRENT_VERSION) {
+            throw new IOException("Unsupported container version: " + version);
+        }
+
+        if (algorithm != ALGORITHM_AES_GCM) {
+            throw new IOException("Unsupported container algorithm: " + algorithm);
+        }
+
+        header.compression();
+
+        if (header.chunkSize() <= 0 || header.chunkSize() > MAX_CHUNK_SIZE || header.plaintextLength() < 0) {
+            throw new IOException("Corrupted container header");
+        }
+
+        return header;
+    }
+
+    /**
+     * @return the compression of the chunks
+     * @throws IOException if the compression is unknown
+     */
+    public Compression compression() throws IOException {
+        return Compression.fromId(flags & COMPRESSION_MASK);
+    }
+
+    /**
+     * @return true if the chunks are compressed, and therefore stored in the layout of {@link CompressedContainer}
+     */
+    public boolean isCompressed() {
+        return (flags & COMPRESSION_MASK) != Compression.NONE.getId();
+    }
+
+    /**
+     * @return true if the container is a pack of a directory tree written by {@link PackArchive}
+     */
+    public boolean isPack() {
+        return (flags & FLAG_PACK) != 0;
+    }
+
+    /**
+     * @return true if the container is the manifest of a file whose content is kept in a {@link ChunkStore}
+     */
+    public boolean isManifest() {
+        return (flags & FLAG_MANIFEST) != 0;
+    }
+
+    /**
+     * @return true if the container is a chunk kept in a {@link ChunkStore}, only to be read through its manifests
+     */
+    public boolean isStoredChunk() {
+        return (flags & FLAG_STORED_CHUNK) != 0;
+    }
+
+    /**
+     * @return the serialized header
+     */
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE)
+                .put(MAGIC)
+                .put((byte) version)
+                .put((byte) algorithm)
+                .put((byte) flags)
+                .put((byte) 0)
+                .putInt(chunkSize)
+                .putLong(plaintextLength)
+                .putLong(noncePrefix)
+                .array();
+    }
+
+    /**
+     * @return the number of chunks, an empty plaintext still being stored as a single empty chunk
+     */
+    public long chunkCount() {
+        return Math.max(1, (plaintextLength + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * @param index the index of the chunk
+     * @return the number of plaintext bytes stored in the chunk
+     */
+    public int chunkLength(long index) {
+        return (int) Math.min(chunkSize, plaintextLength - index * chunkSize);
+    }
+
+    /**
+     * @param index the index of the chunk
+     * @return the position of the sealed chunk within an uncompressed container
+     */
+    public long chunkOffset(long index) {
+        return SIZE + index * (chunkSize + (long) TAG_LENGTH);
+    }
+
+    /**
+     * @return the expected size of the whole uncompressed container in bytes
+     */
+    public long containerLength() {
+        return chunkOffset(chunkCount() - 1) + chunkLength(chunkCount() - 1) + TAG_LENGTH;
+    }
+
+    /**
+     * @param index the index of the chunk
+     * @return the unique nonce of the chunk
+     */
+    public byte[] nonce(long index) {
+        return ByteBuffer.allocate(NONCE_LENGTH).putLong(noncePrefix).putInt((int) index).array();
+    }
+}
@@ -0,0 +1,172 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.BadPaddingException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only integrity check of encrypted files, confirming they are intact and can be decrypted with the password of
+ * a session, without writing anything.
+ * <p>
+ * Every chunk of a container is authenticated the same way decrypting it would, in parallel, but its plaintext is
+ * dropped instead of written. Compressed chunks are inflated as well, packs are checked as the containers they are,
+ * every chunk of a manifest is checked in its store against its name, and chunks of a store found on their own are
+ * checked against the name given by their path. Chunks shared by several manifests are checked once per verifier.
+ * Files that are not containers, such as plaintext or files in the legacy format, which has no authentication tags,
+ * are reported as foreign.
+ * </p>
+ */
+public final class ContainerVerifier {
+    public static final String FOREIGN = "Not an encrypted container";
+
+    private static final double MIB = 1024 * 1024;
+
+    private final CryptoSession session;
+    private final Map<Path, Set<ByteBuffer>> verifiedChunks = new ConcurrentHashMap<>();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * Creates a verifier checking files against the key of the given session.
+     *
+     * @param session the session providing the key and ciphers
+     */
+    public ContainerVerifier(CryptoSession session) {
+        this.session = session;
+    }
+
+    /**
+     * @return the number of bytes read from the verified files and the chunk stores they refer to
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Verifies a single file.
+     *
+     * @param file the file to be verified
+     * @return a successful result if every chunk of the file is authentic, otherwise a failure telling whether the
+     *         file is corrupted or {@link #FOREIGN}
+     */
+    public FileResult verify(File file) {
+        Path path = file.toPath();
+        long size = 0;
+
+        try (FileChannel input = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = input.size();
+            ByteBuffer headerBytes = ByteBuffer.allocate(ContainerHeader.SIZE);
+
+            if (ChunkedContainer.readFully(input, headerBytes, 0) < ContainerHeader.SIZE || !ContainerHeader.hasMagic(headerBytes.array())) {
+                return FileResult.failure(file, size, FOREIGN);
+            }
+
+            ContainerHeader header = ContainerHeader.fromBytes(headerBytes.array());
+            bytesRead.addAndGet(size);
+
+            if (header.isStoredChunk()) {
+                ChunkStore.verifyChunk(path, input, header, session);
+            } else if (header.isManifest()) {
+                bytesRead.addAndGet(ChunkStore.verify(input, session, verifiedChunks));
+            } else if (header.isCompressed()) {
+                CompressedContainer.decrypt(input, null, header, session);
+            } else {
+                ChunkedContainer.verify(input, header, session);
+            }
+
+            return FileResult.success(file, size);
+        } catch (BadPaddingException e) {
+            return FileResult.failure(file, size, "Corrupted, or encrypted with another password: " + e.getMessage());
+        } catch (IOException | GeneralSecurityException e) {
+            return FileResult.failure(file, size, "Corrupted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Verifies the given files and directories, as done by the -v= and -v commands.
+     *
+     * @param engine      the engine walking the directories in parallel
+     * @param roots       the files and directories to be verified
+     * @param description the name of what is verified, used in the messages
+     * @param session     the session providing the key and ciphers
+     * @return the message describing the verification
+     * @throws IllegalStateException if any file is corrupted or not encrypted, listing every such file
+     */
+    public static String verifyAll(DirectoryEngine engine, List<File> roots, String description, CryptoSession session) {
+        long startTime = System.nanoTime();
+        ContainerVerifier verifier = new ContainerVerifier(session);
+        BatchResult result = engine.verify(roots, verifier, new BatchResult());
+        String summary = verifier.describe(result, System.nanoTime() - startTime);
+
+        if (!result.isSuccessful()) {
+            StringBuilder message = new StringBuilder(description + " failed verification (" + summary + "):");
+            for (FileResult failure : result.getFailures()) {
+                message.append("\n\t").append(failure);
+            }
+            throw new IllegalStateException(message.toString());
+        }
+
+        return description + " is intact (" + summary + ")";
+    }
+
+    /**
+     * Parses the path given to the -v= command.
+     *
+     * @param value the path, possibly quoted
+     * @return the file or directory to be verified
+     * @throws IllegalArgumentException if the path is empty
+     * @throws FileNotFoundException    if the file or directory does not exist
+     */
+    public static File parseTarget(String value) throws FileNotFoundException {
+        String path = value.replaceAll("\"", "").trim();
+
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Path cannot be empty");
+        }
+
+        File target = new File(path);
+
+        if (!target.exists()) {
+            throw new FileNotFoundException("File not found: " + path);
+        }
+
+        return target;
+    }
+
+    /**
+     * @param result the result of a file
+     * @return true if the file has been reported as not being a container
+     */
+    public static boolean isForeign(FileResult result) {
+        return !result.successful() && FOREIGN.equals(result.message());
+    }
+
+    /**
+     * Summarizes a verification, telling corrupted files apart from foreign ones.
+     *
+     * @param result       the result of the verification
+     * @param elapsedNanos the time the verification has taken
+     * @return the number of verified, corrupted, foreign and skipped files, and the throughput
+     */
+    public String describe(BatchResult result, long elapsedNanos) {
+        long foreign = result.getFailures().stream().filter(ContainerVerifier::isForeign).count();
+        double seconds = Math.max(elapsedNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        double mebibytes = bytesRead.get() / MIB;
+
+        return String.format(Locale.ROOT, "%d file(s) verified, %d corrupted, %d foreign, %d skipped, %.1f MiB read in %.2f s (%.1f MiB/s)",
+                result.getSucceededCount(), result.getFailedCount() - foreign, foreign, result.getSkippedCount(),
+                mebibytes, seconds, mebibytes / seconds);
+    }
+}
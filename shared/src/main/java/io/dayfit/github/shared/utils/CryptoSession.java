@@ -0,0 +1,230 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Key material and cipher instances shared by all files of a single batch operation.
+ * <p>
+ * The key is derived from the password once when the session is opened, and every worker thread gets its own
+ * reusable {@link Cipher} and {@link Mac} instances, kept in a thread local. The session only refers to them weakly,
+ * so the instances of a thread are released along with it, while closing the session zeroes the derived key and
+ * drops the ciphers of all threads still running.
+ * </p>
+ */
+public class CryptoSession implements AutoCloseable {
+    private static final String CHUNK_MAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] CHUNK_KEY_LABEL = "alohomora chunk names".getBytes(StandardCharsets.US_ASCII);
+
+    private final SessionKey key;
+    private final ThreadLocal<Instances> instances = ThreadLocal.withInitial(this::register);
+    private final Set<Reference<Instances>> registered = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Instances> released = new ReferenceQueue<>();
+    private volatile SessionKey chunkKey;
+
+    private CryptoSession(SessionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Opens a session, deriving the key from the given password.
+     *
+     * @param password the password used for encryption or decryption
+     * @return the opened session
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    public static CryptoSession open(String password) throws NoSuchAlgorithmException {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        byte[] digest = sha.digest(password.getBytes(StandardCharsets.UTF_8));
+
+        try {
+            return new CryptoSession(new SessionKey(Arrays.copyOf(digest, 16), Encryptor.ALGORITHM));
+        } finally {
+            Arrays.fill(digest, (byte) 0);
+        }
+    }
+
+    /**
+     * @return the key derived for this session
+     * @throws IllegalStateException if the session has been closed
+     */
+    public SecretKey getKey() {
+        if (key.isDestroyed()) {
+            throw new IllegalStateException("Crypto session has been closed");
+        }
+
+        return key;
+    }
+
+    /**
+     * @return the AES-GCM cipher of the calling thread, used for chunked containers
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     */
+    public Cipher containerCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Instances current = instances.get();
+
+        if (current.containerCipher == null) {
+            current.containerCipher = Cipher.getInstance(ChunkedContainer.TRANSFORMATION);
+        }
+
+        return current.containerCipher;
+    }
+
+    /**
+     * @return the cipher of the calling thread, used for files in the legacy format
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     */
+    public Cipher legacyCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Instances current = instances.get();
+
+        if (current.legacyCipher == null) {
+            current.legacyCipher = Cipher.getInstance(Encryptor.ALGORITHM);
+        }
+
+        return current.legacyCipher;
+    }
+
+    /**
+     * @return the HMAC-SHA256 instance of the calling thread, keyed with a key derived from the session key, used for
+     * naming the chunks of a {@link ChunkStore} without revealing anything about their content
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the derived key is invalid
+     */
+    public Mac chunkMac() throws NoSuchAlgorithmException, InvalidKeyException {
+        Instances current = instances.get();
+
+        if (current.chunkMac == null) {
+            Mac mac = Mac.getInstance(CHUNK_MAC_ALGORITHM);
+            mac.init(chunkKey());
+            current.chunkMac = mac;
+        }
+
+        return current.chunkMac;
+    }
+
+    private SecretKey chunkKey() throws NoSuchAlgorithmException, InvalidKeyException {
+        SessionKey derived = chunkKey;
+
+        if (derived == null) {
+            synchronized (this) {
+                if (chunkKey == null) {
+                    Mac mac = Mac.getInstance(CHUNK_MAC_ALGORITHM);
+                    mac.init(getKey());
+                    chunkKey = new SessionKey(mac.doFinal(CHUNK_KEY_LABEL), CHUNK_MAC_ALGORITHM);
+                }
+                derived = chunkKey;
+            }
+        }
+
+        return derived;
+    }
+
+    /**
+     * Creates the instances of the calling thread, forgetting the instances of threads that have ended in the meantime.
+     *
+     * @return the empty instances of the calling thread
+     */
+    private Instances register() {
+        Reference<? extends Instances> reference;
+        while ((reference = released.poll()) != null) {
+            registered.remove(reference);
+        }
+
+        Instances created = new Instances();
+        registered.add(new WeakReference<>(created, released));
+        return created;
+    }
+
+    /**
+     * Zeroes the derived keys and drops all cipher instances of this session.
+     */
+    @Override
+    public void close() {
+        key.destroy();
+        registered.forEach(reference -> {
+            Instances threadInstances = reference.get();
+            if (threadInstances != null) {
+                threadInstances.clear();
+            }
+        });
+        registered.clear();
+        instances.remove();
+
+        if (chunkKey != null) {
+            chunkKey.destroy();
+        }
+    }
+
+    /**
+     * Cipher and MAC instances of a single thread, only referenced strongly by the thread itself.
+     */
+    private static class Instances {
+        private Cipher containerCipher;
+        private Cipher legacyCipher;
+        private Mac chunkMac;
+
+        void clear() {
+            containerCipher = null;
+            legacyCipher = null;
+            chunkMac = null;
+        }
+    }
+
+    /**
+     * Key whose material can be zeroed, unlike {@link javax.crypto.spec.SecretKeySpec}.
+     */
+    private static class SessionKey implements SecretKey {
+        private final byte[] keyBytes;
+        private final String algorithm;
+        private volatile boolean destroyed;
+
+        SessionKey(byte[] keyBytes, String algorithm) {
+            this.keyBytes = keyBytes;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            if (destroyed) {
+                throw new IllegalStateException("Key has been destroyed");
+            }
+
+            return keyBytes.clone();
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+}
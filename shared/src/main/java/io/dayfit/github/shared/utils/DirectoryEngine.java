@@ -0,0 +1,349 @@
+package io.dayfit.github.shared.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+/**
+ * Parallel engine encrypting or decrypting whole directory trees.
+ * <p>
+ * Every directory is read by its own task and every file is processed by its own task on a work-stealing
+ * {@link ForkJoinPool}, so idle workers pick up work from busy subtrees and several roots are processed at once.
+ * Directories are streamed rather than listed, so huge directories do not need memory for all their entries.
+ * Files that already are in the target state are detected from their first bytes and skipped, so repeated or
+ * interrupted runs do not process them again. Temporary files left behind by interrupted runs are skipped.
+ * </p>
+ */
+public class DirectoryEngine implements AutoCloseable {
+    private static final DirectoryEngine COMMON = new DirectoryEngine(Runtime.getRuntime().availableProcessors());
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an engine with the given number of worker threads.
+     *
+     * @param parallelism the number of worker threads, values lower than 1 mean one worker per available processor
+     */
+    public DirectoryEngine(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return the shared engine using one worker per available processor
+     */
+    public static DirectoryEngine common() {
+        return COMMON;
+    }
+
+    /**
+     * @return the number of worker threads of this engine
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Encrypts or decrypts all given roots concurrently. Directories are processed recursively.
+     * The key is derived once for the whole batch.
+     *
+     * @param roots      the files or directories to be processed
+     * @param encryption true to encrypt, false to decrypt
+     * @param password   the password used for encryption or decryption
+     * @return the result of every processed file
+     */
+    public BatchResult process(Collection<File> roots, boolean encryption, String password) {
+        try (CryptoSession session = CryptoSession.open(password)) {
+            return process(roots, encryption, session);
+        } catch (NoSuchAlgorithmException e) {
+            BatchResult result = new BatchResult();
+            roots.forEach(root -> result.add(FileResult.failure(root, e.getMessage())));
+            return result;
+        }
+    }
+
+    /**
+     * Encrypts or decrypts all given roots concurrently, sharing the key and ciphers of the given session.
+     *
+     * @param roots      the files or directories to be processed
+     * @param encryption true to encrypt, false to decrypt
+     * @param session    the session providing the key and ciphers
+     * @return the result of every processed file
+     */
+    public BatchResult process(Collection<File> roots, boolean encryption, CryptoSession session) {
+        return process(roots, encryption, session, new BatchResult());
+    }
+
+    /**
+     * Encrypts or decrypts all given roots concurrently, recording the outcome of every file into the given result.
+     *
+     * @param roots      the files or directories to be processed
+     * @param encryption true to encrypt, false to decrypt
+     * @param session    the session providing the key and ciphers
+     * @param result     the result the outcome of every file is recorded into
+     * @return the given result
+     */
+    public BatchResult process(Collection<File> roots, boolean encryption, CryptoSession session, BatchResult result) {
+        return process(roots, encryption, session, result, null);
+    }
+
+    /**
+     * Encrypts or decrypts all given roots concurrently, encrypting files into the given chunk store instead of into
+     * containers of their own. Files kept in a store are restored by decrypting them as usual.
+     *
+     * @param roots      the files or directories to be processed
+     * @param encryption true to encrypt, false to decrypt
+     * @param session    the session providing the key and ciphers
+     * @param result     the result the outcome of every file is recorded into
+     * @param store      the store to encrypt into, null to encrypt every file into a container of its own
+     * @return the given result
+     */
+    public BatchResult process(Collection<File> roots, boolean encryption, CryptoSession session, BatchResult result, ChunkStore store) {
+        return process(roots, encryption, session, result, store, null);
+    }
+
+    /**
+     * Encrypts or decrypts all given roots concurrently, skipping the files an interrupted run has already completed.
+     * Completed files are recorded as skipped without being read.
+     *
+     * @param roots      the files or directories to be processed
+     * @param encryption true to encrypt, false to decrypt
+     * @param session    the session providing the key and ciphers
+     * @param result     the result the outcome of every file is recorded into
+     * @param store      the store to encrypt into, null to encrypt every file into a container of its own
+     * @param completed  tells from the path and attributes of a file whether it has been completed, null for none
+     * @return the given result
+     */
+    public BatchResult process(Collection<File> roots, boolean encryption, CryptoSession session, BatchResult result, ChunkStore store, BiPredicate<Path, BasicFileAttributes> completed) {
+        long startTime = System.nanoTime();
+        Batch batch = new Batch(encryption, session, store, result, new FileTreeWalker(), completed, null);
+
+        walk(roots, batch);
+        batch.walker.relink(result);
+
+        Encryptor.getOperationListener().batchCompleted(encryption, result, System.nanoTime() - startTime);
+        return result;
+    }
+
+    /**
+     * Verifies all given roots concurrently without writing anything, see {@link ContainerVerifier}. A file with
+     * several hard links is verified once.
+     *
+     * @param roots    the files or directories to be verified
+     * @param verifier the verifier checking every file
+     * @param result   the result the outcome of every file is recorded into
+     * @return the given result
+     */
+    public BatchResult verify(Collection<File> roots, ContainerVerifier verifier, BatchResult result) {
+        walk(roots, new Batch(false, null, null, result, new FileTreeWalker(), null, verifier));
+        return result;
+    }
+
+    /**
+     * Encrypts or decrypts the given files in the given order, every worker taking the next file not yet started.
+     * No file is started after the deadline; files already started are always finished, so none is left half processed.
+     *
+     * @param files         the files to be processed, most important first
+     * @param encryption    true to encrypt, false to decrypt
+     * @param session       the session providing the key and ciphers
+     * @param store         the store to encrypt into, null to encrypt every file into a container of its own
+     * @param result        the result the outcome of every file is recorded into
+     * @param deadlineNanos the {@link System#nanoTime()} after which no more files are started
+     * @return the files that have not been started before the deadline, in the given order
+     */
+    public List<File> processInOrder(List<File> files, boolean encryption, CryptoSession session, ChunkStore store, BatchResult result, long deadlineNanos) {
+        long startTime = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        List<RecursiveAction> workers = new ArrayList<>(pool.getParallelism());
+
+        for (int i = 0; i < pool.getParallelism(); i++) {
+            workers.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    while (System.nanoTime() - deadlineNanos < 0) {
+                        int index = next.getAndIncrement();
+
+                        if (index >= files.size()) {
+                            return;
+                        }
+
+                        processFile(files.get(index), encryption, session, store, result);
+                    }
+                }
+            });
+        }
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(workers);
+            }
+        });
+
+        Encryptor.getOperationListener().batchCompleted(encryption, result, System.nanoTime() - startTime);
+        return List.copyOf(files.subList(Math.min(next.get(), files.size()), files.size()));
+    }
+
+    private void walk(Collection<File> roots, Batch batch) {
+        List<PathTask> tasks = roots.stream().map(root -> new PathTask(root.toPath(), null, true, batch)).toList();
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the worker threads of this engine and waits for its completion.
+     *
+     * @param task the task to be run
+     */
+    void invoke(ForkJoinTask<?> task) {
+        pool.invoke(task);
+    }
+
+    @Override
+    public void close() {
+        if (this != COMMON) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Task processing a single file, or forking a subtask for every entry of a directory.
+     * <p>
+     * A directory is read entry by entry and at most {@link #WINDOW} of its entries are pending at any time, so the
+     * tasks waiting to run are bounded by the depth of the tree times the window instead of the size of its
+     * directories. Links and hard links are handled by the shared {@link FileTreeWalker}.
+     * </p>
+     */
+    private static class PathTask extends RecursiveAction {
+        private static final int WINDOW = 256;
+
+        private final Path path;
+        private final FileTreeWalker.Ancestors ancestors;
+        private final boolean root;
+        private final Batch batch;
+
+        PathTask(Path path, FileTreeWalker.Ancestors ancestors, boolean root, Batch batch) {
+            this.path = path;
+            this.ancestors = ancestors;
+            this.root = root;
+            this.batch = batch;
+        }
+
+        @Override
+        protected void compute() {
+            BasicFileAttributes attributes;
+
+            try {
+                attributes = FileTreeWalker.attributesOf(path, root);
+            } catch (IOException e) {
+                batch.result.add(FileResult.failure(path.toFile(), "Could not read attributes: " + e.getMessage()));
+                return;
+            }
+
+            if (attributes.isDirectory()) {
+                processDirectory(attributes.fileKey());
+            } else if (attributes.isRegularFile()) {
+                if (Encryptor.isTemporaryFile(path)) {
+                    // left behind by an operation in progress or interrupted by a crash, never a file of its own
+                } else if (batch.completed != null && batch.completed.test(path, attributes)) {
+                    batch.result.add(FileResult.skipped(path.toFile(), attributes.size()));
+                } else if (batch.walker.claim(path, attributes)) {
+                    batch.processFile(path);
+                }
+            } else if (root) {
+                // reports why the root cannot be processed
+                batch.processFile(path);
+            }
+        }
+
+        private void processDirectory(Object key) {
+            if (FileTreeWalker.Ancestors.contains(ancestors, key)) {
+                batch.result.add(FileResult.failure(path.toFile(), "Directory contains itself"));
+                return;
+            }
+
+            FileTreeWalker.Ancestors children = new FileTreeWalker.Ancestors(key, ancestors);
+            ArrayDeque<PathTask> pending = new ArrayDeque<>(WINDOW);
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    if (pending.size() == WINDOW) {
+                        pending.poll().join();
+                    }
+
+                    PathTask task = new PathTask(entry, children, false, batch);
+                    task.fork();
+                    pending.add(task);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                batch.result.add(FileResult.failure(path.toFile(), "Could not list directory: " + e.getMessage()));
+            } finally {
+                pending.forEach(ForkJoinTask::join);
+            }
+        }
+    }
+
+    /**
+     * State shared by all tasks of a batch. Batches with a verifier only verify their files.
+     */
+    private record Batch(boolean encryption, CryptoSession session, ChunkStore store, BatchResult result, FileTreeWalker walker,
+                         BiPredicate<Path, BasicFileAttributes> completed, ContainerVerifier verifier) {
+        void processFile(Path path) {
+            if (verifier == null) {
+                DirectoryEngine.processFile(path.toFile(), encryption, session, store, result);
+            } else {
+                result.add(verifier.verify(path.toFile()));
+            }
+        }
+    }
+
+    /**
+     * Encrypts or decrypts a single file, skipping it if it already is in the target state.
+     *
+     * @param file       the file to be processed
+     * @param encryption true to encrypt, false to decrypt
+     * @param session    the session providing the key and ciphers
+     * @param store      the store to encrypt into, null to encrypt the file into a container of its own
+     * @param result     the result the outcome of the file is recorded into
+     */
+    private static void processFile(File file, boolean encryption, CryptoSession session, ChunkStore store, BatchResult result) {
+        long size = file.length();
+
+        try {
+            if (Encryptor.isInTargetState(file, encryption, session)) {
+                result.add(FileResult.skipped(file, size));
+                return;
+            }
+
+            if (encryption && store != null) {
+                Encryptor.encrypt(file, file, session, store);
+            } else if (encryption) {
+                Encryptor.encrypt(file, file, session);
+            } else {
+                Encryptor.decrypt(file, file, session);
+            }
+
+            result.add(FileResult.success(file, size));
+        } catch (Exception e) {
+            result.add(FileResult.failure(file, size, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only channel over the plaintext of an encrypted container.
+ * <p>
+ * Only the chunks touched by a read are decrypted and authenticated, and the most recently used decrypted chunks are
+ * kept in a small LRU cache. Reading a few bytes from the middle of a large file therefore costs a single chunk
+ * decryption, and no plaintext is ever written to disk. Compressed containers are read through their index of chunk
+ * offsets, which is authenticated when the channel is opened. Files in the legacy format cannot be opened, as they do
+ * not support random access.
+ * </p>
+ */
+public class EncryptedFileChannel implements SeekableByteChannel {
+    public static final int DEFAULT_CACHED_CHUNKS = 8;
+
+    private final FileChannel channel;
+    private final CryptoSession session;
+    private final boolean ownsSession;
+    private final ContainerHeader header;
+    private final byte[] headerBytes;
+    private final long[] offsets;
+    private final Map<Long, byte[]> cache;
+    private long position;
+    private boolean open = true;
+
+    private EncryptedFileChannel(FileChannel channel, CryptoSession session, boolean ownsSession, ContainerHeader header, long[] offsets, int cachedChunks) {
+        this.channel = channel;
+        this.session = session;
+        this.ownsSession = ownsSession;
+        this.header = header;
+        this.headerBytes = header.toBytes();
+        this.offsets = offsets;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > cachedChunks;
+            }
+        };
+    }
+
+    /**
+     * Opens an encrypted file for random-access reading.
+     *
+     * @param path     the encrypted file
+     * @param password the password the file has been encrypted with
+     * @return the opened channel, owning its own crypto session
+     * @throws IOException if an I/O error occurs or the file is not a supported container
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    public static EncryptedFileChannel open(Path path, String password) throws IOException, NoSuchAlgorithmException {
+        CryptoSession session = CryptoSession.open(password);
+
+        try {
+            return open(path, session, true, DEFAULT_CACHED_CHUNKS);
+        } catch (IOException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an encrypted file for random-access reading, using the key of an already opened session.
+     * The session is not closed together with the channel.
+     *
+     * @param path         the encrypted file
+     * @param session      the session providing the key and ciphers
+     * @param cachedChunks the maximum number of decrypted chunks kept in memory
+     * @return the opened channel
+     * @throws IOException if an I/O error occurs or the file is not a supported container
+     */
+    public static EncryptedFileChannel open(Path path, CryptoSession session, int cachedChunks) throws IOException {
+        return open(path, session, false, cachedChunks);
+    }
+
+    private static EncryptedFileChannel open(Path path, CryptoSession session, boolean ownsSession, int cachedChunks) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            ContainerHeader header = ChunkedContainer.readHeader(channel);
+            long[] offsets = null;
+
+            if (header.isManifest()) {
+                throw new IOException("File is kept in a chunk store, it has to be restored instead");
+            }
+
+            if (header.isCompressed()) {
+                try {
+                    offsets = CompressedContainer.readIndex(channel, header, header.toBytes(), session);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Could not decrypt the chunk index: " + e.getMessage(), e);
+                }
+            } else if (channel.size() != header.containerLength()) {
+                throw new IOException("Encrypted file is truncated or corrupted");
+            }
+
+            return new EncryptedFileChannel(channel, session, ownsSession, header, offsets, Math.max(1, cachedChunks));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an encrypted file as a stream of its plaintext.
+     *
+     * @param path     the encrypted file
+     * @param password the password the file has been encrypted with
+     * @return the stream, closing the underlying channel when closed
+     * @throws IOException if an I/O error occurs or the file is not a supported container
+     * @throws NoSuchAlgorithmException if the key derivation algorithm is not available
+     */
+    public static InputStream newInputStream(Path path, String password) throws IOException, NoSuchAlgorithmException {
+        return Channels.newInputStream(open(path, password));
+    }
+
+    /**
+     * @return the header of the container
+     */
+    public ContainerHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer destination) throws IOException {
+        ensureOpen();
+
+        if (position >= header.plaintextLength()) {
+            return -1;
+        }
+
+        int total = 0;
+
+        while (destination.hasRemaining() && position < header.plaintextLength()) {
+            long index = position / header.chunkSize();
+            int offset = (int) (position % header.chunkSize());
+            byte[] chunk = chunk(index);
+            int length = Math.min(destination.remaining(), chunk.length - offset);
+
+            destination.put(chunk, offset, length);
+            position += length;
+            total += length;
+        }
+
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer source) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position cannot be negative");
+        }
+
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return header.plaintextLength();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+
+        open = false;
+        cache.clear();
+        channel.close();
+
+        if (ownsSession) {
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the decrypted chunk, decrypting and authenticating it if it is not cached.
+     */
+    private byte[] chunk(long index) throws IOException {
+        byte[] chunk = cache.get(index);
+
+        if (chunk != null) {
+            return chunk;
+        }
+
+        if (offsets != null) {
+            try {
+                chunk = CompressedContainer.openChunk(channel, header, headerBytes, session, offsets, index);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not decrypt chunk " + index + ": " + e.getMessage(), e);
+            }
+
+            cache.put(index, chunk);
+            return chunk;
+        }
+
+        ByteBuffer sealed = ByteBuffer.allocate(header.chunkLength(index) + ContainerHeader.TAG_LENGTH);
+        if (ChunkedContainer.readFully(channel, sealed, header.chunkOffset(index)) < sealed.capacity()) {
+            throw new IOException("Encrypted file is truncated or corrupted");
+        }
+
+        try {
+            Cipher cipher = session.containerCipher();
+            ChunkedContainer.initChunkCipher(Cipher.DECRYPT_MODE, cipher, session.getKey(), header, headerBytes, index);
+            chunk = cipher.doFinal(sealed.array());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not decrypt chunk " + index + ": " + e.getMessage(), e);
+        }
+
+        cache.put(index, chunk);
+        return chunk;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
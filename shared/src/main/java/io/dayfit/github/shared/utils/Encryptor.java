@@ -0,0 +1,622 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * The Encryptor class provides methods for encrypting and decrypting files and directories using the AES algorithm.
+ * <p>
+ * New files are written in the chunked AES-GCM format of {@link ChunkedContainer}. Files encrypted by earlier versions
+ * with plain {@value #ALGORITHM} can still be decrypted.
+ * </p>
+ */
+public class Encryptor {
+    final static String ALGORITHM = "AES";
+    final static int BUFFER_SIZE = 64 * 1024;
+    final static int LEGACY_BLOCK_SIZE = 16;
+    public final static String TEMP_FILE_SUFFIX = ".alohomora.tmp";
+    final static long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+    final static BufferPool BUFFER_POOL = new BufferPool(BUFFER_SIZE + 64, 64, false);
+
+    private static volatile IOBackend ioBackend = IOBackend.CHANNEL;
+    private static volatile Compression compression = Compression.NONE;
+    private static volatile OperationListener operationListener = OperationListener.NONE;
+
+    final static String FILE_DECRYPTED_SUCCESSFULLY = "File has been decrypted successfully: ";
+    final static String FILE_ENCRYPTED_SUCCESSFULLY = "File has been encrypted successfully: ";
+
+    private Encryptor() {
+    }
+
+    /**
+     * @return the I/O backend used for reading and writing files
+     */
+    public static IOBackend getIOBackend() {
+        return ioBackend;
+    }
+
+    /**
+     * Sets the I/O backend used for reading and writing files.
+     *
+     * @param backend the backend to be used by subsequent operations
+     */
+    public static void setIOBackend(IOBackend backend) {
+        ioBackend = backend;
+    }
+
+    /**
+     * @return the compression applied to files before they are encrypted
+     */
+    public static Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the compression applied to files before they are encrypted. Files whose content does not compress are
+     * encrypted uncompressed regardless. Decryption detects the compression of every file from its header.
+     *
+     * @param compression the compression to be used by subsequent encryptions
+     */
+    public static void setCompression(Compression compression) {
+        Encryptor.compression = compression;
+    }
+
+    /**
+     * @return the listener notified about every file operation
+     */
+    public static OperationListener getOperationListener() {
+        return operationListener;
+    }
+
+    /**
+     * Sets the listener notified about every file operation, for example to record metrics.
+     *
+     * @param listener the listener, or {@link OperationListener#NONE} to disable notifications
+     */
+    public static void setOperationListener(OperationListener listener) {
+        operationListener = listener;
+    }
+
+    /**
+     * Detects the encryption state of a file. Only the first bytes of the file are read.
+     *
+     * @param file the file to be checked
+     * @return the encryption state of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static FileState detectState(File file) throws IOException {
+        long size = Files.size(file.toPath());
+
+        if (size >= ContainerHeader.SIZE && ChunkedContainer.isContainer(file.toPath())) {
+            return FileState.ENCRYPTED;
+        }
+
+        return size > 0 && size % LEGACY_BLOCK_SIZE == 0 ? FileState.LEGACY_OR_PLAINTEXT : FileState.PLAINTEXT;
+    }
+
+    /**
+     * Checks whether a file is encrypted in the chunked container format. Only the first bytes of the file are read.
+     *
+     * @param file the file to be checked
+     * @return true if the file is encrypted
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean isEncrypted(File file) throws IOException {
+        return detectState(file) == FileState.ENCRYPTED;
+    }
+
+    /**
+     * Detects the encryption state of a file, telling files encrypted in the legacy format apart from plaintext by
+     * decrypting their last block with the key of the session. Plaintext only decrypts to valid padding about once in
+     * 256 files, so all other plaintext files are {@link FileState#PLAINTEXT} instead of being garbled by decryption.
+     *
+     * @param file    the file to be checked
+     * @param session the session providing the key and ciphers
+     * @return the encryption state of the file
+     * @throws IOException              if an I/O error occurs
+     * @throws GeneralSecurityException if the legacy cipher is not available
+     */
+    public static FileState detectState(File file, CryptoSession session) throws IOException, GeneralSecurityException {
+        FileState state = detectState(file);
+
+        if (state != FileState.LEGACY_OR_PLAINTEXT) {
+            return state;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(LEGACY_BLOCK_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = channel.size() - LEGACY_BLOCK_SIZE;
+            while (block.hasRemaining()) {
+                if (channel.read(block, position + block.position()) < 0) {
+                    throw new EOFException(file + " has been truncated while being read");
+                }
+            }
+        }
+
+        Cipher cipher = session.legacyCipher();
+        cipher.init(Cipher.DECRYPT_MODE, session.getKey());
+
+        try {
+            cipher.doFinal(block.array());
+            return FileState.LEGACY_OR_PLAINTEXT;
+        } catch (BadPaddingException | IllegalBlockSizeException e) {
+            return FileState.PLAINTEXT;
+        }
+    }
+
+    /**
+     * Checks whether a file already is in the state an operation would bring it into, so it has to be skipped.
+     *
+     * @param file       the file to be checked
+     * @param encryption true for encryption, false for decryption
+     * @param session    the session providing the key and ciphers
+     * @return true if the file is encrypted and encryption is requested, or it is plaintext and decryption is requested
+     * @throws IOException              if an I/O error occurs
+     * @throws GeneralSecurityException if the legacy cipher is not available
+     */
+    public static boolean isInTargetState(File file, boolean encryption, CryptoSession session) throws IOException, GeneralSecurityException {
+        return encryption ? detectState(file) == FileState.ENCRYPTED : detectState(file, session) == FileState.PLAINTEXT;
+    }
+
+    /**
+     * Encrypts a file using the specified password.
+     *
+     * @param inputFile the file to be encrypted
+     * @param password  the password used for encryption
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws IOException if an I/O error occurs
+     * @throws InvalidKeyException if the given key is invalid
+     */
+    public static void encrypt(File inputFile, String password) throws IllegalBlockSizeException, NoSuchAlgorithmException, IOException, InvalidKeyException, NoSuchPaddingException, BadPaddingException {
+        encrypt(inputFile, inputFile, password);
+    }
+
+    /**
+      * Encrypts a file and writes the encrypted data to the specified output file.
+      * This method uses the AES algorithm to encrypt the contents of the input file
+      * and writes the encrypted data to the output file. The encryption is performed
+      * using the specified password, which is converted into a SecretKey.
+      *
+      * @param inputFile  the file to be encrypted
+      * @param outputFile the file to write the encrypted data to
+      * @param password   the password used for encryption
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+      * @throws NoSuchAlgorithmException if the specified algorithm is not available
+      * @throws InvalidKeyException if the given key is invalid
+      * @throws IOException if an I/O error occurs
+      * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+      */
+    public static void encrypt(File inputFile, File outputFile, String password) throws NoSuchAlgorithmException, InvalidKeyException, IOException, IllegalBlockSizeException, NoSuchPaddingException, BadPaddingException {
+        try (CryptoSession session = CryptoSession.open(password)) {
+            encrypt(inputFile, outputFile, session);
+        }
+    }
+
+    /**
+     * Encrypts a file and writes the encrypted data to the specified output file,
+     * using the key and ciphers of an already opened session.
+     *
+     * @param inputFile  the file to be encrypted
+     * @param outputFile the file to write the encrypted data to
+     * @param session    the session providing the key and ciphers
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     */
+    public static void encrypt(File inputFile, File outputFile, CryptoSession session) throws NoSuchAlgorithmException, InvalidKeyException, IOException, IllegalBlockSizeException, NoSuchPaddingException, BadPaddingException {
+        handleEncryptionDecryption(inputFile, outputFile, session, true, null);
+    }
+
+    /**
+     * Encrypts a file into a deduplicating chunk store, writing the manifest referring to its chunks to the output
+     * file. Decrypting the manifest restores the file.
+     *
+     * @param inputFile  the file to be encrypted
+     * @param outputFile the file to write the manifest to
+     * @param session    the session providing the key and ciphers
+     * @param store      the store keeping the chunks of the file
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     */
+    public static void encrypt(File inputFile, File outputFile, CryptoSession session, ChunkStore store) throws NoSuchAlgorithmException, InvalidKeyException, IOException, IllegalBlockSizeException, NoSuchPaddingException, BadPaddingException {
+        handleEncryptionDecryption(inputFile, outputFile, session, true, store);
+    }
+
+    /**
+     * Encrypts all files in a directory using the specified password.
+     *
+     * @param directory the directory containing files to be encrypted
+     * @param password  the password used for encryption
+     * @return the result of every processed file
+     */
+    public static BatchResult encryptDirectory(File directory, String password) {
+        return encryptDirectory(directory, password, DirectoryEngine.common());
+    }
+
+    /**
+     * Encrypts all files in a directory using the specified password and engine.
+     *
+     * @param directory the directory containing files to be encrypted
+     * @param password  the password used for encryption
+     * @param engine    the engine processing the files in parallel
+     * @return the result of every processed file
+     */
+    public static BatchResult encryptDirectory(File directory, String password, DirectoryEngine engine) {
+        return engine.process(List.of(directory), true, password);
+    }
+
+    /**
+     * Decrypts a file using the specified password.
+     *
+     * @param inputFile the file to be decrypted
+     * @param password  the password used for decryption
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     */
+    public static void decrypt(File inputFile, String password) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, IOException, IllegalBlockSizeException, BadPaddingException {
+        decrypt(inputFile, inputFile, password);
+    }
+
+    /**
+     * Decrypts a file and writes the decrypted data to the specified output file.
+     * This method uses the AES algorithm to decrypt the contents of the input file
+     * and writes the decrypted data to the output file. The decryption is performed
+     * using the specified password, which is converted into a SecretKey.
+     *
+     * @param inputFile  the file to be decrypted
+     * @param outputFile the file to write the decrypted data to
+     * @param password   the password used for decryption
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     * @throws IOException if an I/O error occurs
+     */
+    public static void decrypt(File inputFile, File outputFile, String password) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, IllegalBlockSizeException, IOException, BadPaddingException {
+        try (CryptoSession session = CryptoSession.open(password)) {
+            decrypt(inputFile, outputFile, session);
+        }
+    }
+
+    /**
+     * Decrypts a file and writes the decrypted data to the specified output file,
+     * using the key and ciphers of an already opened session.
+     *
+     * @param inputFile  the file to be decrypted
+     * @param outputFile the file to write the decrypted data to
+     * @param session    the session providing the key and ciphers
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     * @throws IOException if an I/O error occurs
+     */
+    public static void decrypt(File inputFile, File outputFile, CryptoSession session) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, IllegalBlockSizeException, IOException, BadPaddingException {
+        handleEncryptionDecryption(inputFile, outputFile, session, false, null);
+    }
+
+    /**
+     * Decrypts all files in a directory using the specified password.
+     *
+     * @param directory the directory containing files to be decrypted
+     * @param password  the password used for decryption
+     * @return the result of every processed file
+     */
+    public static BatchResult decryptDirectory(File directory, String password) {
+        return decryptDirectory(directory, password, DirectoryEngine.common());
+    }
+
+    /**
+     * Decrypts all files in a directory using the specified password and engine.
+     *
+     * @param directory the directory containing files to be decrypted
+     * @param password  the password used for decryption
+     * @param engine    the engine processing the files in parallel
+     * @return the result of every processed file
+     */
+    public static BatchResult decryptDirectory(File directory, String password, DirectoryEngine engine) {
+        return engine.process(List.of(directory), false, password);
+    }
+
+    /**
+     * Handles the encryption and decryption of files.
+     * Files are encrypted into the chunked container format, whose chunks are processed in parallel. Decryption detects
+     * the container format and falls back to the legacy AES format otherwise, streaming it through a fixed-size buffer
+     * of the selected {@link IOBackend}. In both cases the result is written into a temporary file next to the output file,
+     * which then atomically replaces the output file, so memory usage does not depend on the file size.
+     * Every operation is reported to the {@link OperationListener}.
+     *
+     * @param inputFile  the file to be encrypted or decrypted
+     * @param outputFile the file to write the encrypted or decrypted data to
+     * @param session    the session providing the key and ciphers
+     * @param isEncryption true if the operation is encryption, false if decryption
+     * @param store        the store to encrypt into, null to encrypt into a container of its own
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     */
+    private static void handleEncryptionDecryption(File inputFile, File outputFile, CryptoSession session, boolean isEncryption, ChunkStore store) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, IOException, IllegalBlockSizeException, BadPaddingException {
+        final String MESSAGE = isEncryption ? FILE_ENCRYPTED_SUCCESSFULLY : FILE_DECRYPTED_SUCCESSFULLY;
+
+        if (!inputFile.exists())
+        {
+            throw new FileNotFoundException(inputFile.getAbsolutePath() + " does not exist");
+        }
+
+        if (isSystemPath(inputFile)) {
+            System.out.println("[ERROR]: Cannot encrypt/decrypt system file: " + inputFile.getAbsolutePath());
+            return;
+        }
+
+        OperationListener listener = operationListener;
+        long startTime = System.nanoTime();
+        long inputSize = inputFile.length();
+        listener.fileStarted(isEncryption);
+
+        try {
+            transformFile(inputFile, outputFile, session, isEncryption, store);
+            listener.fileCompleted(isEncryption, inputSize, System.nanoTime() - startTime);
+        } catch (Exception e) {
+            listener.fileFailed(isEncryption, e);
+            throw e;
+        }
+
+        System.out.println(MESSAGE + inputFile.getAbsolutePath());
+    }
+
+    /**
+     * Encrypts or decrypts the input file into a temporary file, which then atomically replaces the output file.
+     *
+     * @param inputFile    the file to be encrypted or decrypted
+     * @param outputFile   the file to write the encrypted or decrypted data to
+     * @param session      the session providing the key and ciphers
+     * @param isEncryption true if the operation is encryption, false if decryption
+     * @param store        the store to encrypt into, null to encrypt into a container of its own
+     *
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     */
+    private static void transformFile(File inputFile, File outputFile, CryptoSession session, boolean isEncryption, ChunkStore store) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, IOException, IllegalBlockSizeException, BadPaddingException {
+        Path inputPath = inputFile.toPath();
+        Path outputPath = outputFile.toPath().toAbsolutePath();
+        Path tempPath = createSiblingTempFile(outputPath);
+
+        try {
+            if (isEncryption && store != null) {
+                store.store(inputPath, tempPath, session);
+            } else if (isEncryption) {
+                ChunkedContainer.encrypt(inputPath, tempPath, session, ioBackend == IOBackend.MAPPED, compression);
+            } else if (ChunkedContainer.isContainer(inputPath)) {
+                ChunkedContainer.decrypt(inputPath, tempPath, session, ioBackend == IOBackend.MAPPED);
+            } else {
+                Cipher cipher = session.legacyCipher();
+                cipher.init(Cipher.DECRYPT_MODE, session.getKey());
+
+                switch (ioBackend) {
+                    case STREAM -> transformStream(cipher, inputPath, tempPath);
+                    case CHANNEL -> transformChannel(cipher, inputPath, tempPath, false);
+                    case MAPPED -> transformChannel(cipher, inputPath, tempPath, true);
+                }
+            }
+
+            replaceAtomically(tempPath, outputPath);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Cipher output buffer is too small", e);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Transforms the input file into the output file through streams and a heap array.
+     *
+     * @param cipher     the initialized cipher
+     * @param inputPath  the file to be read
+     * @param outputPath the file to be written
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws ShortBufferException if the output buffer is too small for the cipher output
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     */
+    private static void transformStream(Cipher cipher, Path inputPath, Path outputPath) throws IOException, ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        try (InputStream inputStream = Files.newInputStream(inputPath);
+             OutputStream outputStream = Files.newOutputStream(outputPath)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] outputBuffer = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+            int bytesRead;
+
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                int bytesWritten = cipher.update(buffer, 0, bytesRead, outputBuffer);
+                outputStream.write(outputBuffer, 0, bytesWritten);
+            }
+
+            outputStream.write(cipher.doFinal());
+        }
+    }
+
+    /**
+     * Transforms the input file into the output file through file channels and pooled buffers.
+     * Once the pool is warmed up the loop does not allocate. The buffers handed to the cipher are heap buffers,
+     * because the JDK providers copy direct buffers through a freshly allocated array on every update.
+     *
+     * @param cipher     the initialized cipher
+     * @param inputPath  the file to be read
+     * @param outputPath the file to be written
+     * @param mapped     true to read the input through memory-mapped regions
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws ShortBufferException if the output buffer is too small for the cipher output
+     * @throws IllegalBlockSizeException if the provided data is not a multiple of the block size
+     * @throws BadPaddingException if the specified password is invalid or file is corrupted
+     */
+    private static void transformChannel(Cipher cipher, Path inputPath, Path outputPath, boolean mapped) throws IOException, ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        ByteBuffer inputBuffer = BUFFER_POOL.acquire();
+        ByteBuffer outputBuffer = BUFFER_POOL.acquire();
+
+        try (FileChannel inputChannel = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel outputChannel = FileChannel.open(outputPath, StandardOpenOption.WRITE)) {
+            long size = inputChannel.size();
+            long position = 0;
+
+            while (position < size) {
+                if (mapped) {
+                    long regionSize = Math.min(MAPPED_REGION_SIZE, size - position);
+                    MappedByteBuffer region = inputChannel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+
+                    while (region.hasRemaining()) {
+                        int length = Math.min(BUFFER_SIZE, region.remaining());
+                        region.get(inputBuffer.array(), 0, length);
+                        inputBuffer.limit(length);
+                        updateAndWrite(cipher, inputBuffer, outputBuffer, outputChannel);
+                    }
+
+                    position += regionSize;
+                } else {
+                    inputBuffer.limit(BUFFER_SIZE);
+                    int bytesRead = inputChannel.read(inputBuffer);
+
+                    if (bytesRead == -1) {
+                        break;
+                    }
+
+                    inputBuffer.flip();
+                    updateAndWrite(cipher, inputBuffer, outputBuffer, outputChannel);
+                    position += bytesRead;
+                }
+            }
+
+            inputBuffer.clear().limit(0);
+            cipher.doFinal(inputBuffer, outputBuffer);
+            writeFully(outputChannel, outputBuffer.flip());
+        } finally {
+            BUFFER_POOL.release(inputBuffer);
+            BUFFER_POOL.release(outputBuffer);
+        }
+    }
+
+    /**
+     * Passes the input buffer through the cipher and writes the result to the channel. Both buffers are cleared afterwards.
+     */
+    private static void updateAndWrite(Cipher cipher, ByteBuffer inputBuffer, ByteBuffer outputBuffer, FileChannel outputChannel) throws ShortBufferException, IOException {
+        cipher.update(inputBuffer, outputBuffer);
+        writeFully(outputChannel, outputBuffer.flip());
+        inputBuffer.clear();
+        outputBuffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Checks whether a path is a temporary file of an operation, either in progress or left behind by a crash.
+     * Temporary files are never processed as files of their own.
+     *
+     * @param path the path to be checked
+     * @return true if the path is a temporary file
+     */
+    public static boolean isTemporaryFile(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().endsWith(TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Creates an empty temporary file next to the given target, so that it can later be moved over the target
+     * within the same file store. Permissions of an existing target are copied to the temporary file.
+     *
+     * @param target the file that will eventually be replaced
+     * @return the path of the created temporary file
+     * @throws IOException if the temporary file could not be created
+     */
+    static Path createSiblingTempFile(Path target) throws IOException {
+        Path directory = target.getParent();
+        Path tempPath = Files.createTempFile(directory, "." + target.getFileName(), TEMP_FILE_SUFFIX);
+
+        if (Files.exists(target) && Files.getFileStore(tempPath).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(tempPath, Files.getPosixFilePermissions(target));
+        }
+
+        return tempPath;
+    }
+
+    /**
+     * Moves the source file over the target, atomically where the file system supports it.
+     *
+     * @param source the fully written temporary file
+     * @param target the file to be replaced
+     * @throws IOException if the file could not be moved
+     */
+    static void replaceAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean isSystemPath(File file) throws IOException {
+        final String OS_NAME = System.getProperty("os.name").toLowerCase();
+        final String[] SYSTEM_DIRS = {"/bin", "/sbin", "/etc", "/usr/bin", "/usr/sbin"};
+
+        if (OS_NAME.contains("win"))
+        {
+            DosFileAttributes dosFileAttributes = Files.readAttributes(file.toPath(), DosFileAttributes.class);
+            return dosFileAttributes.isSystem();
+        }
+
+        else if (OS_NAME.contains("mac") || OS_NAME.contains("nix") || OS_NAME.contains("nux") || OS_NAME.contains("aix"))
+        {
+            for (String dir : SYSTEM_DIRS)
+            {
+                if (file.getAbsolutePath().contains(dir))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package io.dayfit.github.shared.utils;
+
+import java.io.File;
+
+/**
+ * Outcome of encrypting or decrypting a single file as part of a batch.
+ *
+ * @param file    the processed file
+ * @param status  the outcome of processing the file
+ * @param bytes   the size of the file before it has been processed, 0 if unknown
+ * @param message the error message if processing failed, otherwise null
+ */
+public record FileResult(File file, Status status, long bytes, String message) {
+
+    /**
+     * Possible outcomes of processing a single file.
+     */
+    public enum Status {
+        PROCESSED,
+        SKIPPED,
+        FAILED
+    }
+
+    /**
+     * Creates a result for a successfully processed file.
+     *
+     * @param file  the processed file
+     * @param bytes the size of the file before it has been processed
+     * @return the successful result
+     */
+    public static FileResult success(File file, long bytes) {
+        return new FileResult(file, Status.PROCESSED, bytes, null);
+    }
+
+    /**
+     * Creates a result for a file that has been skipped, because it already was in the target state.
+     *
+     * @param file  the skipped file
+     * @param bytes the size of the file
+     * @return the skipped result
+     */
+    public static FileResult skipped(File file, long bytes) {
+        return new FileResult(file, Status.SKIPPED, bytes, null);
+    }
+
+    /**
+     * Creates a result for a file that could not be processed.
+     *
+     * @param file    the file that failed
+     * @param message the reason of the failure
+     * @return the failed result
+     */
+    public static FileResult failure(File file, String message) {
+        return failure(file, 0, message);
+    }
+
+    /**
+     * Creates a result for a file of known size that could not be processed.
+     *
+     * @param file    the file that failed
+     * @param bytes   the size of the file
+     * @param message the reason of the failure
+     * @return the failed result
+     */
+    public static FileResult failure(File file, long bytes, String message) {
+        return new FileResult(file, Status.FAILED, bytes, message);
+    }
+
+    /**
+     * @return true if the file has been processed or skipped without errors
+     */
+    public boolean successful() {
+        return status != Status.FAILED;
+    }
+
+    @Override
+    public String toString() {
+        return successful() ? file.getAbsolutePath() : file.getAbsolutePath() + " (" + message + ")";
+    }
+}
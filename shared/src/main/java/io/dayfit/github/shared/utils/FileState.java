@@ -0,0 +1,21 @@
+package io.dayfit.github.shared.utils;
+
+/**
+ * Encryption state of a file, as detected from its first bytes and its size.
+ */
+public enum FileState {
+    /**
+     * The file is a chunked container.
+     */
+    ENCRYPTED,
+
+    /**
+     * The file is not a container, but its size allows it to be encrypted in the legacy format.
+     */
+    LEGACY_OR_PLAINTEXT,
+
+    /**
+     * The file can be neither a container nor a file encrypted in the legacy format.
+     */
+    PLAINTEXT
+}
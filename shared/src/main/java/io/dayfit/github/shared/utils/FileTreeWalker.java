@@ -0,0 +1,287 @@
+package io.dayfit.github.shared.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Streaming traversal of directory trees, shared by everything walking the files to be encrypted or decrypted.
+ * <p>
+ * Directories are read entry by entry instead of being listed into arrays, so the memory needed depends on the depth
+ * of a tree and not on the number of entries in its directories. Symbolic links below a root are not followed, as
+ * encrypting through a link would replace the link by an encrypted copy of its target; a root that is a link is
+ * followed. A file with several hard links is visited through the first link reached only, so it is never encrypted
+ * twice and its links can be restored afterwards, and a directory containing itself, e.g. through a bind mount, is
+ * reported instead of being walked forever. Temporary files of operations in progress or interrupted by a crash are
+ * left out, so they are never encrypted as files of their own.
+ * </p>
+ * <p>
+ * An instance remembers the hard-linked files it has visited, so one instance is shared by all roots of a batch.
+ * It is thread-safe, so parallel walkers can share it too.
+ * </p>
+ */
+public final class FileTreeWalker {
+    private static final boolean UNIX = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private final Map<Object, Path> linkedFiles = new ConcurrentHashMap<>();
+    private final Queue<Path[]> aliases = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of regular files and their total size, used for reporting progress.
+     *
+     * @param files the number of regular files
+     * @param bytes the total size of the files in bytes
+     */
+    public record Totals(long files, long bytes) {
+    }
+
+    /**
+     * Receives the files of a walk.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Called for every regular file, once per file even if it has several hard links.
+         *
+         * @param file       the file
+         * @param attributes the attributes of the file
+         * @throws IOException to abort the walk
+         */
+        void visitFile(Path file, BasicFileAttributes attributes) throws IOException;
+
+        /**
+         * Called for every path that cannot be read, or that is a directory containing itself.
+         * The walk continues with the next path.
+         *
+         * @param path  the path that has been skipped
+         * @param cause the reason it has been skipped
+         */
+        default void visitFailed(Path path, IOException cause) {
+            System.err.println("[Warning]: Could not read " + path + ": " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Counts the regular files under the given roots and their total size, without reading any content.
+     * Paths that cannot be read are left out silently, as they are reported by the operation itself.
+     *
+     * @param roots the files and directories to be counted
+     * @return the number of files and bytes
+     */
+    public static Totals scan(Collection<File> roots) {
+        long[] totals = new long[2];
+
+        try {
+            new FileTreeWalker().walk(roots, new Visitor() {
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attributes) {
+                    totals[0]++;
+                    totals[1] += attributes.size();
+                }
+
+                @Override
+                public void visitFailed(Path path, IOException cause) {
+                    // files vanishing while scanning are reported by the operation itself
+                }
+            });
+        } catch (IOException e) {
+            // the visitor never aborts
+        }
+
+        return new Totals(totals[0], totals[1]);
+    }
+
+    /**
+     * Walks the given roots one after another, calling the visitor for every regular file found.
+     *
+     * @param roots   the files and directories to be walked
+     * @param visitor the visitor receiving the files
+     * @throws IOException if the visitor has aborted the walk
+     */
+    public void walk(Collection<File> roots, Visitor visitor) throws IOException {
+        for (File root : roots) {
+            Path start;
+
+            try {
+                start = start(root.toPath());
+            } catch (IOException e) {
+                visitor.visitFailed(root.toPath(), e);
+                continue;
+            }
+
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                private Ancestors ancestors;
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    if (Ancestors.contains(ancestors, attributes.fileKey())) {
+                        visitor.visitFailed(directory, new IOException("Directory contains itself"));
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    ancestors = new Ancestors(attributes.fileKey(), ancestors);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) {
+                    ancestors = ancestors.parent();
+                    if (e != null) {
+                        visitor.visitFailed(directory, e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (attributes.isRegularFile() && !Encryptor.isTemporaryFile(file) && claim(file, attributes)) {
+                        visitor.visitFile(file, attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    visitor.visitFailed(file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+    /**
+     * Claims a regular file for being processed. Files with a single link are always claimed; a file with several
+     * hard links is claimed through the first of its links only, and its other links are remembered, so they can be
+     * pointed to the processed file by {@link #relink(BatchResult)}.
+     *
+     * @param file       the file
+     * @param attributes the attributes of the file, read without following links
+     * @return true if the file has to be processed, false if it has already been claimed through another link
+     */
+    public boolean claim(Path file, BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+
+        if (key == null || !UNIX) {
+            return true;
+        }
+
+        // processing replaces the first link by a new file, after which the others may report a single link
+        Path first = linkedFiles.get(key);
+
+        if (first == null) {
+            try {
+                Object links = Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+
+                if (!(links instanceof Integer count && count > 1)) {
+                    return true;
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                return true;
+            }
+
+            first = linkedFiles.putIfAbsent(key, file);
+
+            if (first == null) {
+                return true;
+            }
+        }
+
+        aliases.add(new Path[]{file, first});
+        return false;
+    }
+
+    /**
+     * Points the other hard links of every processed file to the file it has been replaced with, as encrypting or
+     * decrypting replaces a file instead of rewriting it, which would leave its other links with the old content.
+     * Links of files that have not been replaced, e.g. because they have failed or were skipped, are left untouched.
+     *
+     * @param result the result the outcome of every relinked file is recorded into
+     */
+    public void relink(BatchResult result) {
+        for (Path[] alias : aliases) {
+            Path link = alias[0];
+            Path first = alias[1];
+
+            try {
+                BasicFileAttributes processed = Files.readAttributes(first, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                if (processed.fileKey().equals(attributesOf(link, false).fileKey())) {
+                    continue;
+                }
+
+                Path tempPath = Encryptor.createSiblingTempFile(link);
+
+                try {
+                    Files.delete(tempPath);
+                    Files.createLink(tempPath, first);
+                    Encryptor.replaceAtomically(tempPath, link);
+                } finally {
+                    Files.deleteIfExists(tempPath);
+                }
+
+                result.add(FileResult.success(link.toFile(), processed.size()));
+            } catch (IOException | RuntimeException e) {
+                result.add(FileResult.failure(link.toFile(), "Could not link to " + first + ": " + e.getMessage()));
+            }
+        }
+
+        aliases.clear();
+    }
+
+    /**
+     * Reads the attributes of a path without following links, except for a root, which is followed when it is a link.
+     *
+     * @param path the path
+     * @param root true if the path is the root of a walk
+     * @return the attributes of the path
+     * @throws IOException if the attributes cannot be read
+     */
+    static BasicFileAttributes attributesOf(Path path, boolean root) throws IOException {
+        return root
+                ? Files.readAttributes(path, BasicFileAttributes.class)
+                : Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private static Path start(Path root) throws IOException {
+        return Files.isSymbolicLink(root) ? root.toRealPath() : root;
+    }
+
+    /**
+     * Keys of the directories above the one being walked, innermost first, used for detecting directories containing
+     * themselves. Without following links this can only happen through mounts, so the chain is only as long as the
+     * depth of the tree.
+     *
+     * @param key    the file key of the directory
+     * @param parent the directories above it, null for a root
+     */
+    record Ancestors(Object key, Ancestors parent) {
+        /**
+         * @param ancestors the chain to be searched, null for none
+         * @param key       the file key of a directory, null if the file system has none
+         * @return true if the chain contains the given key
+         */
+        static boolean contains(Ancestors ancestors, Object key) {
+            if (key == null) {
+                return false;
+            }
+
+            for (Ancestors current = ancestors; current != null; current = current.parent) {
+                if (key.equals(current.key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.dayfit.github.shared.utils;
+
+/**
+ * I/O backends available for reading and writing files while they are encrypted or decrypted.
+ * <p>
+ * Chunked containers are always accessed through positional {@link java.nio.channels.FileChannel} I/O, so that chunks
+ * can be processed in parallel; for them only {@link #MAPPED} changes how the input is read. All backends apply to
+ * files in the legacy format.
+ * </p>
+ */
+public enum IOBackend {
+    /**
+     * Reads and writes through {@link java.io.InputStream} and {@link java.io.OutputStream} with a heap array.
+     */
+    STREAM,
+
+    /**
+     * Reads and writes through {@link java.nio.channels.FileChannel} with pooled buffers.
+     */
+    CHANNEL,
+
+    /**
+     * Reads through memory-mapped regions of the input file and writes through {@link java.nio.channels.FileChannel}.
+     */
+    MAPPED
+}
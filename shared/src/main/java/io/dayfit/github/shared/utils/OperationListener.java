@@ -0,0 +1,53 @@
+package io.dayfit.github.shared.utils;
+
+/**
+ * Receives notifications about file and batch operations of the {@link Encryptor} and the {@link DirectoryEngine}.
+ * <p>
+ * Callbacks run synchronously on the worker threads, on the per-file hot path, so implementations must be cheap
+ * and thread-safe.
+ * </p>
+ */
+public interface OperationListener {
+    /**
+     * Listener ignoring all notifications.
+     */
+    OperationListener NONE = new OperationListener() {
+    };
+
+    /**
+     * Called before a file is encrypted or decrypted.
+     *
+     * @param encryption true for encryption, false for decryption
+     */
+    default void fileStarted(boolean encryption) {
+    }
+
+    /**
+     * Called after a file has been encrypted or decrypted.
+     *
+     * @param encryption true for encryption, false for decryption
+     * @param bytes      the size of the input file
+     * @param nanos      the time the operation took
+     */
+    default void fileCompleted(boolean encryption, long bytes, long nanos) {
+    }
+
+    /**
+     * Called after a file could not be encrypted or decrypted.
+     *
+     * @param encryption true for encryption, false for decryption
+     * @param exception  the cause of the failure
+     */
+    default void fileFailed(boolean encryption, Exception exception) {
+    }
+
+    /**
+     * Called after a batch of files has been processed by the directory engine.
+     *
+     * @param encryption true for encryption, false for decryption
+     * @param result     the result of the batch
+     * @param nanos      the time the batch took
+     */
+    default void batchCompleted(boolean encryption, BatchResult result, long nanos) {
+    }
+}
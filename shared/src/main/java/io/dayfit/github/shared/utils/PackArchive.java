@@ -0,0 +1,573 @@
+package io.dayfit.github.shared.utils;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Encrypts a whole directory tree into a single pack file, avoiding the per-file cost of encrypting many small files.
+ * <p>
+ * A pack is a regular chunked container, marked by {@link ContainerHeader#FLAG_PACK}, whose plaintext starts with an
+ * index of all entries followed by the contents of all files, one after another. The index is therefore encrypted and
+ * authenticated like the contents. Packing streams the files into chunks that are sealed in parallel, so a tree of
+ * many small files is written at the speed of a single large file, with one output file and one cipher setup per
+ * chunk instead of per file. Listing and extracting single entries only decrypt the chunks holding the index and the
+ * requested entries.
+ * </p>
+ * <p>
+ * Index layout (big-endian): index length (4), entry count (4), then per entry: name length (4), UTF-8 name with
+ * {@code /} separators, type (1), offset of the content within the plaintext (8), content length (8) and last
+ * modification time in milliseconds (8). Symbolic links and other special files are not packed.
+ * </p>
+ */
+public final class PackArchive {
+    public static final String EXTENSION = ".pack";
+    public static final String ENTRY_SEPARATOR = "!";
+
+    private static final byte TYPE_FILE = 0;
+    private static final byte TYPE_DIRECTORY = 1;
+    private static final int ENTRY_FIXED_LENGTH = Integer.BYTES + 1 + 3 * Long.BYTES;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private PackArchive() {
+    }
+
+    /**
+     * Entry of a pack.
+     *
+     * @param name      the path of the entry relative to the packed directory, with {@code /} separators
+     * @param directory true for directories, which have no content
+     * @param offset    the position of the content within the plaintext of the pack
+     * @param length    the length of the content
+     * @param modified  the last modification time in milliseconds since the epoch
+     */
+    public record Entry(String name, boolean directory, long offset, long length, long modified) {
+    }
+
+    /**
+     * @param directory the directory to be packed
+     * @return the pack file written for the directory, next to it
+     */
+    public static File packFileOf(File directory) {
+        File absolute = directory.getAbsoluteFile();
+        return new File(absolute.getParentFile(), absolute.getName() + EXTENSION);
+    }
+
+    /**
+     * @param packFile the pack file
+     * @return the directory the pack is unpacked into, next to it
+     * @throws IllegalArgumentException if the file name does not end with {@value #EXTENSION}
+     */
+    public static File directoryOf(File packFile) {
+        File absolute = packFile.getAbsoluteFile();
+
+        if (!absolute.getName().endsWith(EXTENSION) || absolute.getName().length() == EXTENSION.length()) {
+            throw new IllegalArgumentException("Pack file name has to end with " + EXTENSION + ": " + packFile);
+        }
+
+        return new File(absolute.getParentFile(), absolute.getName().substring(0, absolute.getName().length() - EXTENSION.length()));
+    }
+
+    /**
+     * Packs a directory tree into an encrypted pack next to it and deletes the packed files, the same way encrypting
+     * replaces a file by its encrypted version.
+     *
+     * @param directory the directory to be packed
+     * @param session   the session providing the key and ciphers
+     * @return the entries of the written pack
+     *
+     * @throws IOException if an I/O error occurs, or a file changes while it is being packed
+     * @throws NoSuchAlgorithmException if the specified algorithm is not available
+     * @throws NoSuchPaddingException if the specified padding mechanism is not available
+     * @throws InvalidKeyException if the given key is invalid
+     * @throws IllegalBlockSizeException if a chunk could not be sealed
+     * @throws BadPaddingException if a chunk could not be sealed
+     */
+    public static List<Entry> pack(File directory, CryptoSession session) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (!directory.isDirectory()) {
+            throw new FileNotFoundException("No such directory: " + directory);
+        }
+
+        Path root = directory.toPath().toAbsolutePath().normalize();
+        Path packPath = packFileOf(directory).toPath();
+
+        if (Files.exists(packPath)) {
+            throw new IOException("Pack already exists: " + packPath);
+        }
+
+        List<Path> sources = new ArrayList<>();
+        List<Entry> entries = collectEntries(root, sources);
+        byte[] index = writeIndex(entries);
+        long plaintextLength = index.length + entries.stream().mapToLong(Entry::length).sum();
+
+        ContainerHeader header = new ContainerHeader(ContainerHeader.CURRENT_VERSION, ContainerHeader.ALGORITHM_AES_GCM,
+                ContainerHeader.FLAG_PACK, ChunkedContainer.DEFAULT_CHUNK_SIZE, plaintextLength, ChunkedContainer.RANDOM.nextLong());
+        Path tempPath = Encryptor.createSiblingTempFile(packPath);
+
+        try {
+            try (FileChannel output = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                ChunkedContainer.writeFully(output, ByteBuffer.wrap(header.toBytes()), 0);
+                ChunkWriter writer = new ChunkWriter(header, session, output);
+
+                writer.write(index);
+                for (int i = 0, file = 0; i < entries.size(); i++) {
+                    if (!entries.get(i).directory()) {
+                        writer.write(sources.get(file++), entries.get(i).length());
+                    }
+                }
+
+                writer.finish();
+                output.force(true);
+            }
+
+            Encryptor.replaceAtomically(tempPath, packPath);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        deletePacked(root, entries);
+        return entries;
+    }
+
+    /**
+     * Lists the entries of a pack. Only the chunks holding the index are decrypted.
+     *
+     * @param packFile the pack file
+     * @param session  the session providing the key and ciphers
+     * @return the entries of the pack, directories before their contents
+     * @throws IOException if an I/O error occurs, the file is not a pack, or it is corrupted
+     */
+    public static List<Entry> list(File packFile, CryptoSession session) throws IOException {
+        try (EncryptedFileChannel channel = openPack(packFile, session)) {
+            return readIndex(channel);
+        }
+    }
+
+    /**
+     * Unpacks a pack into the directory it has been packed from and deletes the pack. The directory is written under a
+     * temporary name and renamed once complete.
+     *
+     * @param packFile the pack file
+     * @param session  the session providing the key and ciphers
+     * @return the unpacked entries
+     * @throws IOException if an I/O error occurs, the directory already exists, or the pack is corrupted
+     */
+    public static List<Entry> unpack(File packFile, CryptoSession session) throws IOException {
+        Path target = directoryOf(packFile).toPath();
+
+        if (Files.exists(target)) {
+            throw new IOException("Directory already exists: " + target);
+        }
+
+        Path tempDirectory = target.resolveSibling("." + target.getFileName() + Encryptor.TEMP_FILE_SUFFIX);
+        List<Entry> entries;
+
+        // left over by an interrupted unpack
+        deleteTree(tempDirectory);
+        Files.createDirectory(tempDirectory);
+
+        try {
+            try (EncryptedFileChannel channel = openPack(packFile, session)) {
+                entries = readIndex(channel);
+                extractEntries(channel, entries, tempDirectory, false);
+            }
+
+            Encryptor.replaceAtomically(tempDirectory, target);
+        } catch (IOException e) {
+            deleteTree(tempDirectory);
+            throw e;
+        }
+
+        Files.delete(packFile.toPath());
+        return entries;
+    }
+
+    /**
+     * Extracts a single entry, or a directory entry together with everything inside it, into the directory the pack
+     * has been packed from. The pack is kept, and only the chunks holding the index and the extracted entries are
+     * decrypted.
+     *
+     * @param packFile the pack file
+     * @param name     the name of the entry, as listed
+     * @param session  the session providing the key and ciphers
+     * @return the extracted entries
+     * @throws IOException if an I/O error occurs, the entry does not exist, or the pack is corrupted
+     */
+    public static List<Entry> extract(File packFile, String name, CryptoSession session) throws IOException {
+        String normalized = name.replace('\\', '/').replaceAll("^/+|/+$", "");
+        Path target = directoryOf(packFile).toPath();
+
+        try (EncryptedFileChannel channel = openPack(packFile, session)) {
+            List<Entry> selected = readIndex(channel).stream()
+                    .filter(entry -> entry.name().equals(normalized) || entry.name().startsWith(normalized + "/"))
+                    .toList();
+
+            if (selected.isEmpty()) {
+                throw new FileNotFoundException("No such entry in " + packFile + ": " + name);
+            }
+
+            Files.createDirectories(target);
+            extractEntries(channel, selected, target, true);
+            return selected;
+        }
+    }
+
+    private static EncryptedFileChannel openPack(File packFile, CryptoSession session) throws IOException {
+        EncryptedFileChannel channel = EncryptedFileChannel.open(packFile.toPath(), session, EncryptedFileChannel.DEFAULT_CACHED_CHUNKS);
+
+        if (!channel.getHeader().isPack()) {
+            channel.close();
+            throw new IOException("Not an encrypted pack: " + packFile);
+        }
+
+        return channel;
+    }
+
+    private static List<Entry> collectEntries(Path root, List<Path> sources) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long[] offset = {0};
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                if (!directory.equals(root)) {
+                    entries.add(new Entry(nameOf(root, directory), true, 0, 0, attributes.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!attributes.isRegularFile()) {
+                    System.err.println("[Warning]: Skipping " + file + ", only regular files and directories are packed");
+                } else if (!Encryptor.isTemporaryFile(file)) {
+                    entries.add(new Entry(nameOf(root, file), false, offset[0], attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    sources.add(file);
+                    offset[0] += attributes.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // contents follow the index, whose length is known once all names are
+        long indexLength = 2L * Integer.BYTES;
+        for (Entry entry : entries) {
+            indexLength += ENTRY_FIXED_LENGTH + entry.name().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        if (indexLength > Integer.MAX_VALUE) {
+            throw new IOException("Too many entries to pack");
+        }
+
+        List<Entry> placed = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            placed.add(entry.directory() ? entry : new Entry(entry.name(), false, indexLength + entry.offset(), entry.length(), entry.modified()));
+        }
+
+        return placed;
+    }
+
+    private static String nameOf(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static byte[] writeIndex(List<Entry> entries) {
+        List<byte[]> names = entries.stream().map(entry -> entry.name().getBytes(StandardCharsets.UTF_8)).toList();
+        int length = 2 * Integer.BYTES + names.stream().mapToInt(name -> ENTRY_FIXED_LENGTH + name.length).sum();
+        ByteBuffer index = ByteBuffer.allocate(length).putInt(length).putInt(entries.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            index.putInt(names.get(i).length)
+                    .put(names.get(i))
+                    .put(entry.directory() ? TYPE_DIRECTORY : TYPE_FILE)
+                    .putLong(entry.offset())
+                    .putLong(entry.length())
+                    .putLong(entry.modified());
+        }
+
+        return index.array();
+    }
+
+    private static List<Entry> readIndex(EncryptedFileChannel channel) throws IOException {
+        channel.position(0);
+        DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+        int length = input.readInt();
+        int count = input.readInt();
+
+        if (length < 2 * Integer.BYTES || length > channel.size() || count < 0 || count > length / ENTRY_FIXED_LENGTH) {
+            throw new IOException("Corrupted pack index");
+        }
+
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int nameLength = input.readInt();
+
+            if (nameLength < 0 || nameLength > length) {
+                throw new IOException("Corrupted pack index");
+            }
+
+            String name = new String(input.readNBytes(nameLength), StandardCharsets.UTF_8);
+            boolean directory = input.readByte() == TYPE_DIRECTORY;
+            Entry entry = new Entry(name, directory, input.readLong(), input.readLong(), input.readLong());
+
+            if (entry.length() < 0 || entry.offset() < 0 || entry.offset() + entry.length() > channel.size()) {
+                throw new IOException("Corrupted pack index");
+            }
+
+            entries.add(entry);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Writes the entries below the target directory.
+     *
+     * @param replaceAtomically true to write every file under a temporary name first, so existing files are only
+     *                          replaced once complete; false when the whole target directory is still private
+     */
+    private static void extractEntries(EncryptedFileChannel channel, List<Entry> entries, Path target, boolean replaceAtomically) throws IOException {
+        Path root = target.toAbsolutePath().normalize();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+        for (Entry entry : entries) {
+            Path path = root.resolve(entry.name()).normalize();
+
+            if (!path.startsWith(root) || path.equals(root)) {
+                throw new IOException("Invalid pack entry name: " + entry.name());
+            }
+
+            if (entry.directory()) {
+                Files.createDirectories(path);
+                continue;
+            }
+
+            Files.createDirectories(path.getParent());
+            Path tempPath = replaceAtomically ? Encryptor.createSiblingTempFile(path) : path;
+
+            try {
+                try (FileChannel output = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    channel.position(entry.offset());
+                    long remaining = entry.length();
+
+                    while (remaining > 0) {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                        int read = channel.read(buffer);
+
+                        if (read <= 0) {
+                            throw new IOException("Pack is truncated at entry " + entry.name());
+                        }
+
+                        ChunkedContainer.writeFully(output, buffer.flip(), entry.length() - remaining);
+                        remaining -= read;
+                    }
+                }
+
+                if (replaceAtomically) {
+                    Encryptor.replaceAtomically(tempPath, path);
+                }
+            } finally {
+                if (replaceAtomically) {
+                    Files.deleteIfExists(tempPath);
+                }
+            }
+
+            Files.setLastModifiedTime(path, FileTime.fromMillis(entry.modified()));
+        }
+
+        // directories last, as extracting their contents changes their modification time
+        for (Entry entry : entries) {
+            if (entry.directory()) {
+                Files.setLastModifiedTime(root.resolve(entry.name()), FileTime.fromMillis(entry.modified()));
+            }
+        }
+    }
+
+    /**
+     * Deletes the packed files and the directories left empty, keeping anything that has not been packed.
+     */
+    private static void deletePacked(Path root, List<Entry> entries) throws IOException {
+        for (Entry entry : entries) {
+            if (!entry.directory()) {
+                Files.deleteIfExists(root.resolve(entry.name()));
+            }
+        }
+
+        List<Path> directories = new ArrayList<>();
+        directories.add(root);
+        entries.stream().filter(Entry::directory).forEach(entry -> directories.add(root.resolve(entry.name())));
+        directories.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+
+        for (Path directory : directories) {
+            try (Stream<Path> children = Files.list(directory)) {
+                if (children.findAny().isPresent()) {
+                    System.err.println("[Warning]: Keeping " + directory + ", it holds files that have not been packed");
+                    continue;
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Streams the plaintext of a pack into chunks, sealing and writing a batch of chunks in parallel whenever it is full.
+     */
+    private static class ChunkWriter {
+        private final ContainerHeader header;
+        private final byte[] headerBytes;
+        private final CryptoSession session;
+        private final FileChannel output;
+        private final ByteBuffer[] batch;
+        private int filled;
+        private long nextIndex;
+
+        ChunkWriter(ContainerHeader header, CryptoSession session, FileChannel output) {
+            this.header = header;
+            this.headerBytes = header.toBytes();
+            this.session = session;
+            this.output = output;
+            this.batch = new ByteBuffer[Math.max(2, DirectoryEngine.common().getParallelism() * 2)];
+        }
+
+        void write(byte[] bytes) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+            ByteBuffer source = ByteBuffer.wrap(bytes);
+
+            while (source.hasRemaining()) {
+                ByteBuffer chunk = current();
+                int length = Math.min(chunk.remaining(), source.remaining());
+                chunk.put(source.slice(source.position(), length));
+                source.position(source.position() + length);
+                completeIfFull();
+            }
+        }
+
+        void write(Path file, long length) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+            try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+                long position = 0;
+
+                while (position < length) {
+                    ByteBuffer chunk = current();
+                    int limit = (int) Math.min(chunk.remaining(), length - position);
+                    ByteBuffer target = chunk.slice(chunk.position(), limit);
+                    int read = ChunkedContainer.readFully(input, target, position);
+
+                    if (read < limit) {
+                        throw new IOException("File changed while being packed: " + file);
+                    }
+
+                    chunk.position(chunk.position() + limit);
+                    position += limit;
+                    completeIfFull();
+                }
+
+                if (input.size() != length) {
+                    throw new IOException("File changed while being packed: " + file);
+                }
+            }
+        }
+
+        void finish() throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+            if (filled > 0) {
+                sealBatch();
+            }
+
+            if (nextIndex != header.chunkCount()) {
+                throw new IOException("Pack contents changed while being written");
+            }
+        }
+
+        private ByteBuffer current() throws IOException {
+            if (nextIndex + filled >= header.chunkCount()) {
+                throw new IOException("Pack contents changed while being written");
+            }
+
+            if (batch[filled] == null) {
+                batch[filled] = ByteBuffer.allocate(header.chunkSize());
+            }
+            return batch[filled].limit(header.chunkLength(nextIndex + filled));
+        }
+
+        private void completeIfFull() throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+            if (batch[filled].hasRemaining()) {
+                return;
+            }
+
+            filled++;
+
+            if (filled == batch.length) {
+                sealBatch();
+            }
+        }
+
+        private void sealBatch() throws IOException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<RecursiveAction> tasks = new ArrayList<>(filled);
+
+            for (int i = 0; i < filled; i++) {
+                ByteBuffer chunk = batch[i];
+                long index = nextIndex + i;
+
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            Cipher cipher = session.containerCipher();
+                            ChunkedContainer.initChunkCipher(Cipher.ENCRYPT_MODE, cipher, session.getKey(), header, headerBytes, index);
+                            byte[] sealed = cipher.doFinal(chunk.array(), 0, chunk.position());
+                            ChunkedContainer.writeFully(output, ByteBuffer.wrap(sealed), header.chunkOffset(index));
+                        } catch (GeneralSecurityException | IOException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+
+            ChunkedContainer.invoke(tasks, failure);
+
+            for (int i = 0; i < filled; i++) {
+                batch[i].clear();
+            }
+
+            nextIndex += filled;
+            filled = 0;
+        }
+    }
+}
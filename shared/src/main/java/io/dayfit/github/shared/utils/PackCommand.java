@@ -0,0 +1,100 @@
+package io.dayfit.github.shared.utils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+/**
+ * Command working on a pack file, parsed and executed the same way by the background service and by the client
+ * executing commands directly.
+ *
+ * @param argument the argument, one of {@link #ARGUMENTS}
+ * @param target   the directory to be packed for -ea=, otherwise the pack file
+ * @param entry    the name of the entry to be extracted for -xa=, otherwise null
+ */
+public record PackCommand(String argument, File target, String entry) {
+    public static final List<String> ARGUMENTS = List.of("-ea=", "-da=", "-la=", "-xa=");
+
+    /**
+     * Parses the value of a pack argument.
+     *
+     * @param argument the argument, one of {@link #ARGUMENTS}
+     * @param value    the path of the directory or pack file, followed by {@value PackArchive#ENTRY_SEPARATOR} and the
+     *                 entry name for -xa=
+     * @return the parsed command
+     * @throws IllegalArgumentException if the path or the entry to extract is missing
+     * @throws FileNotFoundException    if the directory or pack file does not exist
+     */
+    public static PackCommand parse(String argument, String value) throws FileNotFoundException {
+        String path = value.replaceAll("\"", "").trim();
+        String entry = null;
+
+        if (argument.equals("-xa=")) {
+            int separator = path.lastIndexOf(PackArchive.ENTRY_SEPARATOR);
+
+            if (separator < 0) {
+                throw new IllegalArgumentException("Entry to extract is missing, use -xa=[path]" + PackArchive.ENTRY_SEPARATOR + "(entry)");
+            }
+
+            entry = path.substring(separator + 1);
+            path = path.substring(0, separator);
+        }
+
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Path cannot be empty");
+        }
+
+        File target = new File(path);
+
+        if (!target.exists()) {
+            throw new FileNotFoundException("File not found: " + path);
+        }
+
+        return new PackCommand(argument, target, entry);
+    }
+
+    /**
+     * @return the directory the command packs, unpacks into or extracts into
+     */
+    public File directory() {
+        return argument.equals("-ea=") ? target : PackArchive.directoryOf(target);
+    }
+
+    /**
+     * @return the pack file the command writes or reads
+     */
+    public File packFile() {
+        return argument.equals("-ea=") ? PackArchive.packFileOf(target) : target;
+    }
+
+    /**
+     * Executes the command. Callers running alongside other operations lock {@link #directory()} and
+     * {@link #packFile()} first.
+     *
+     * @param session the session providing the key and ciphers
+     * @return the message describing the outcome, the listing of the entries for -la=
+     * @throws IOException              if the pack or the directory cannot be read or written
+     * @throws GeneralSecurityException if the pack cannot be encrypted or decrypted
+     */
+    public String execute(CryptoSession session) throws IOException, GeneralSecurityException {
+        String path = target.getPath();
+
+        return switch (argument) {
+            case "-ea=" -> "Directory " + path + " successfully packed into " + packFile()
+                    + " (" + PackArchive.pack(target, session).size() + " entries)";
+            case "-da=" -> "Pack " + path + " successfully unpacked into " + directory()
+                    + " (" + PackArchive.unpack(target, session).size() + " entries)";
+            case "-la=" -> {
+                StringBuilder listing = new StringBuilder("Entries of " + path + ":");
+                for (PackArchive.Entry packEntry : PackArchive.list(target, session)) {
+                    listing.append("\n\t").append(packEntry.name()).append(packEntry.directory() ? "/" : " (" + packEntry.length() + " bytes)");
+                }
+                yield listing.toString();
+            }
+            default -> "Extracted " + PackArchive.extract(target, entry, session).size() + " entries of " + path
+                    + " into " + directory();
+        };
+    }
+}